@@ -0,0 +1,14 @@
+package com.mushroom.expense.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * In-process Caffeine caches, declared by {@code spring.cache.cache-names} and
+ * sized and expired by {@code spring.cache.caffeine.spec}. Hit and miss
+ * counts are published as the {@code cache.gets} metric.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,36 @@
+package com.mushroom.expense.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Keeps an entity manager open while views render, as Spring Boot's default
+ * {@code spring.jpa.open-in-view} does, since the pages batch-load
+ * attachments and other lazy associations as they go. Once it has run a
+ * query, that entity manager holds its connection until the request ends.
+ * <p>
+ * Saving the expense form is left out: its uploads are stored before the
+ * save transaction opens, and a connection held since binding the form
+ * would sit idle for all of that.
+ */
+@Configuration
+public class OpenInViewConfig {
+
+    @Bean
+    public OpenEntityManagerInViewInterceptor openEntityManagerInViewInterceptor() {
+        return new OpenEntityManagerInViewInterceptor();
+    }
+
+    @Bean
+    public WebMvcConfigurer openEntityManagerInViewConfigurer(OpenEntityManagerInViewInterceptor interceptor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addWebRequestInterceptor(interceptor).excludePathPatterns("/expense");
+            }
+        };
+    }
+}
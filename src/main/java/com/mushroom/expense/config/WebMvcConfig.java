@@ -1,26 +1,15 @@
 package com.mushroom.expense.config;
 
+import com.mushroom.expense.money.MinorUnitsFormatterFactory;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.format.FormatterRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import org.springframework.beans.factory.annotation.Value;
-
 @Configuration
 public class WebMvcConfig implements WebMvcConfigurer {
 
-    @Value("${app.upload.dir}")
-    private String uploadDir;
-
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        // Ensure path ends with / and is prefixed with file:
-        String uploadPath = "file:" + uploadDir;
-        if (!uploadPath.endsWith("/")) {
-            uploadPath += "/";
-        }
-
-        registry.addResourceHandler("/uploads/**")
-                .addResourceLocations(uploadPath);
+    public void addFormatters(FormatterRegistry registry) {
+        registry.addFormatterForFieldAnnotation(new MinorUnitsFormatterFactory());
     }
 }
@@ -4,6 +4,7 @@ import com.mushroom.expense.entity.Category;
 import com.mushroom.expense.entity.SubCategory;
 import com.mushroom.expense.entity.User;
 import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.ExpenseRollupService;
 import com.mushroom.expense.service.UserService;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -15,10 +16,13 @@ public class AdminController {
 
     private final UserService userService;
     private final CategoryService categoryService;
+    private final ExpenseRollupService expenseRollupService;
 
-    public AdminController(UserService userService, CategoryService categoryService) {
+    public AdminController(UserService userService, CategoryService categoryService,
+            ExpenseRollupService expenseRollupService) {
         this.userService = userService;
         this.categoryService = categoryService;
+        this.expenseRollupService = expenseRollupService;
     }
 
     // --- User Management ---
@@ -129,4 +133,12 @@ public class AdminController {
         categoryService.deleteSubCategory(id);
         return "redirect:/admin/subcategories?categoryId=" + categoryId;
     }
+
+    // --- Reporting ---
+
+    @PostMapping("/rollups/rebuild")
+    public String rebuildRollups() {
+        expenseRollupService.rebuild();
+        return "redirect:/admin/categories";
+    }
 }
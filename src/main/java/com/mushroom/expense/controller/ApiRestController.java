@@ -1,27 +1,76 @@
 package com.mushroom.expense.controller;
 
-import com.mushroom.expense.entity.SubCategory;
+import com.mushroom.expense.dto.SpendBucket;
+import com.mushroom.expense.entity.PaymentMode;
+import com.mushroom.expense.service.CatalogFragmentService;
 import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.ExpenseAnalyticsService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
-import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
 import java.util.List;
 
 @Controller
 public class ApiRestController {
 
+    private static final MediaType HTML_UTF8 = new MediaType(MediaType.TEXT_HTML, StandardCharsets.UTF_8);
+
     private final CategoryService categoryService;
+    private final CatalogFragmentService catalogFragmentService;
+    private final ExpenseAnalyticsService expenseAnalyticsService;
 
-    public ApiRestController(CategoryService categoryService) {
+    public ApiRestController(CategoryService categoryService, CatalogFragmentService catalogFragmentService,
+            ExpenseAnalyticsService expenseAnalyticsService) {
         this.categoryService = categoryService;
+        this.catalogFragmentService = catalogFragmentService;
+        this.expenseAnalyticsService = expenseAnalyticsService;
     }
 
+    /**
+     * Subcategory options for the expense form. The ETag is the catalog
+     * version, so browsers revalidate on every use and get a 304 until an
+     * admin edits the catalog.
+     */
     @GetMapping("/api/subcategories")
-    public String getSubCategories(@RequestParam("category") Long categoryId, Model model) {
-        List<SubCategory> subCategories = categoryService.findSubCategoriesByCategoryId(categoryId);
-        model.addAttribute("subCategories", subCategories);
-        return "fragments/subcategory_options :: options";
+    @ResponseBody
+    public ResponseEntity<byte[]> getSubCategories(@RequestParam("category") Long categoryId, WebRequest request) {
+        long catalogVersion = categoryService.getCatalogVersion();
+        String eTag = "\"catalog-" + catalogVersion + "\"";
+        CacheControl cacheControl = CacheControl.noCache().cachePrivate();
+        if (request.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .cacheControl(cacheControl)
+                .contentType(HTML_UTF8)
+                .body(catalogFragmentService.renderSubCategoryOptions(categoryId, catalogVersion));
+    }
+
+    /**
+     * Approved spend grouped by week, month, category, subcategory or payment
+     * mode, answered from memory, e.g.
+     * {@code /api/analytics/spend?groupBy=WEEK&categoryId=3}.
+     */
+    @GetMapping("/api/analytics/spend")
+    @ResponseBody
+    @PreAuthorize("hasAnyRole('ACCOUNTANT', 'SUPERVISOR')")
+    public List<SpendBucket> getSpend(@RequestParam(defaultValue = "WEEK") ExpenseAnalyticsService.GroupBy groupBy,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(required = false) Long subCategoryId,
+            @RequestParam(required = false) PaymentMode paymentMode) {
+        return expenseAnalyticsService.spend(groupBy, startDate, endDate, categoryId, subCategoryId, paymentMode);
     }
 }
@@ -0,0 +1,147 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.security.AppUserPrincipal;
+import com.mushroom.expense.service.ExpenseService;
+import com.mushroom.expense.service.FileStorageService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Stored attachments and receipt images, to whoever may see an expense they
+ * belong to. Anyone else gets a 404, as for a name that does not exist.
+ * Nothing under the upload directory is served statically, so this is the
+ * only way to read an uploaded file; it takes plain stored names only, and so
+ * never serves exports, spooled parts, previews or quarantined files.
+ * <p>
+ * A stored name never changes content, so files are cached by the browser
+ * for good and revalidated by an ETag derived from the name. Byte ranges are
+ * supported, so large PDFs can be viewed page by page. Under Tomcat the file
+ * is handed to the connector's sendfile, which copies it to the socket
+ * without passing through the JVM; elsewhere, and for multi-part ranges,
+ * Spring streams it.
+ */
+@Controller
+public class AttachmentController {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
+    private final FileStorageService fileStorageService;
+    private final ExpenseService expenseService;
+
+    public AttachmentController(FileStorageService fileStorageService, ExpenseService expenseService) {
+        this.fileStorageService = fileStorageService;
+        this.expenseService = expenseService;
+    }
+
+    @GetMapping("/uploads/{fileName:.+}")
+    public ResponseEntity<Resource> attachment(@PathVariable String fileName,
+            @AuthenticationPrincipal AppUserPrincipal principal, ServletWebRequest request) throws IOException {
+        Path file;
+        try {
+            file = fileStorageService.locate(fileName);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!expenseService.canViewFile(fileName, principal.toUser()) || !Files.isRegularFile(file)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        String eTag = eTag(fileName);
+        MediaType contentType = MediaTypeFactory.getMediaType(fileName).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        if (sendfile(request, file, eTag, contentType)) {
+            return null;
+        }
+        // Spring answers If-None-Match and Range requests for a Resource body itself
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .cacheControl(IMMUTABLE)
+                .eTag(eTag)
+                .body(new FileSystemResource(file));
+    }
+
+    /**
+     * Sends the file, or the single range asked for, through Tomcat's
+     * sendfile, with the same headers and conditional handling as the
+     * streamed response. False when the connector cannot, or the request is
+     * one it is left to Spring to answer.
+     */
+    private boolean sendfile(ServletWebRequest webRequest, Path file, String eTag, MediaType contentType)
+            throws IOException {
+        HttpServletRequest request = webRequest.getRequest();
+        HttpServletResponse response = webRequest.getResponse();
+        if (response == null || !"GET".equals(request.getMethod())
+                || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return false;
+        }
+        long length = Files.size(file);
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(request.getHeader(HttpHeaders.RANGE));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        if (length == 0 || ranges.size() > 1) {
+            return false;
+        }
+
+        response.setHeader(HttpHeaders.CACHE_CONTROL, IMMUTABLE.getHeaderValue());
+        if (webRequest.checkNotModified(eTag)) {
+            return true;
+        }
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        long start = 0;
+        long end = length - 1;
+        if (!ranges.isEmpty()) {
+            start = ranges.get(0).getRangeStart(length);
+            end = ranges.get(0).getRangeEnd(length);
+            if (start >= length || start > end) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+                response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return true;
+            }
+            response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        }
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(end - start + 1);
+        request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, start);
+        // Exclusive, unlike the range
+        request.setAttribute(SENDFILE_END, end + 1);
+        return true;
+    }
+
+    /** Content-addressed names are the hash of the bytes; older names were unique per upload. */
+    private static String eTag(String fileName) {
+        String tag = FileStorageService.isContentAddressed(fileName) ? fileName.substring(0, 64)
+                : DigestUtils.md5DigestAsHex(fileName.getBytes(StandardCharsets.UTF_8));
+        return "\"" + tag + "\"";
+    }
+}
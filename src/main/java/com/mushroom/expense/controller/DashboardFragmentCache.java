@@ -0,0 +1,150 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.ExpenseService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.security.web.csrf.CsrfToken;
+import org.springframework.security.web.csrf.DefaultCsrfToken;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.View;
+import org.springframework.web.servlet.support.RequestContextUtils;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.HtmlUtils;
+import org.thymeleaf.spring6.view.ThymeleafViewResolver;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Rendered HTML of the shared tables on the accountant and supervisor
+ * dashboards. Every reviewer with the same filters sees the same rows, so a
+ * table is rendered once per {@link Key} and served from the cache until one
+ * of its statuses or the catalog moves on. Username changes are only picked
+ * up as entries expire.
+ * <p>
+ * The tables hold forms, and the CSRF token differs per session. Tables are
+ * rendered against a placeholder token that {@link #serve} swaps for the
+ * caller's own.
+ */
+@Component
+public class DashboardFragmentCache {
+
+    public static final String DASHBOARD_FRAGMENTS_CACHE = "dashboardFragments";
+
+    // Random per run, so neither stored data nor an earlier deployment can contain it
+    private static final String CSRF_PLACEHOLDER = "csrf-" + UUID.randomUUID();
+
+    private final ExpenseService expenseService;
+    private final CategoryService categoryService;
+    private final ThymeleafViewResolver viewResolver;
+    private final CacheManager cacheManager;
+
+    public DashboardFragmentCache(ExpenseService expenseService, CategoryService categoryService,
+            ThymeleafViewResolver viewResolver, CacheManager cacheManager) {
+        this.expenseService = expenseService;
+        this.categoryService = categoryService;
+        this.viewResolver = viewResolver;
+        this.cacheManager = cacheManager;
+    }
+
+    /** A bucket's table, and the modals its rows open, which live outside the table's card. */
+    public record RenderedBucket(String table, String modals) {
+    }
+
+    /**
+     * Everything a shared table depends on. {@code scope} names the template
+     * folder, e.g. {@code accountant}, whose {@code buckets.html} holds the
+     * markup.
+     */
+    public record Key(String scope, String bucket, int page, String search, LocalDate startDate,
+            LocalDate endDate, Long categoryId, String sort, List<Long> dataVersions, long catalogVersion) {
+    }
+
+    /**
+     * The key for a bucket as of now. Take it before loading the rows: a
+     * change landing in between then files fresher rows under the older key,
+     * never stale rows under the newer one.
+     */
+    public Key key(String scope, DashboardBucket bucket, String search, LocalDate startDate, LocalDate endDate,
+            Long categoryId, Sort sort) {
+        List<Long> dataVersions = bucket.statuses().stream().map(expenseService::getDataVersion).toList();
+        return new Key(scope, bucket.name(), bucket.page(), search, startDate, endDate, categoryId, sort.toString(),
+                dataVersions, categoryService.getCatalogVersion());
+    }
+
+    /** The cached rendering, still carrying the placeholder token, or {@code null}. */
+    public RenderedBucket get(Key key) {
+        return cache().get(key, RenderedBucket.class);
+    }
+
+    /**
+     * Renders the bucket's fragments from {@code model}, which must hold the
+     * bucket's page and the filter attributes, and caches the result.
+     */
+    public RenderedBucket render(Key key, Map<String, Object> model, HttpServletRequest request,
+            HttpServletResponse response) {
+        HttpServletRequest placeholderRequest = new PlaceholderCsrfRequest(request);
+        String template = key.scope() + "/buckets :: " + key.bucket();
+        RenderedBucket rendered = new RenderedBucket(
+                render(template, model, placeholderRequest, response),
+                render(template + "Modals", model, placeholderRequest, response));
+        cache().put(key, rendered);
+        return rendered;
+    }
+
+    /** The rendering with the caller's CSRF token in place of the placeholder. */
+    public RenderedBucket serve(RenderedBucket rendered, HttpServletRequest request) {
+        CsrfToken token = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+        String value = token != null ? HtmlUtils.htmlEscape(token.getToken()) : "";
+        return new RenderedBucket(rendered.table().replace(CSRF_PLACEHOLDER, value),
+                rendered.modals().replace(CSRF_PLACEHOLDER, value));
+    }
+
+    private String render(String viewName, Map<String, Object> model, HttpServletRequest request,
+            HttpServletResponse response) {
+        try {
+            View view = viewResolver.resolveViewName(viewName, RequestContextUtils.getLocale(request));
+            // Buffers everything written, nothing reaches the real response
+            ContentCachingResponseWrapper capture = new ContentCachingResponseWrapper(response);
+            Objects.requireNonNull(view, viewName).render(model, request, capture);
+            return new String(capture.getContentAsByteArray(), StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not render " + viewName, e);
+        }
+    }
+
+    private Cache cache() {
+        return Objects.requireNonNull(cacheManager.getCache(DASHBOARD_FRAGMENTS_CACHE), DASHBOARD_FRAGMENTS_CACHE);
+    }
+
+    private static final class PlaceholderCsrfRequest extends HttpServletRequestWrapper {
+
+        private final CsrfToken placeholder;
+
+        PlaceholderCsrfRequest(HttpServletRequest request) {
+            super(request);
+            CsrfToken token = (CsrfToken) request.getAttribute(CsrfToken.class.getName());
+            this.placeholder = token != null
+                    ? new DefaultCsrfToken(token.getHeaderName(), token.getParameterName(), CSRF_PLACEHOLDER)
+                    : new DefaultCsrfToken("X-CSRF-TOKEN", "_csrf", CSRF_PLACEHOLDER);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            if (CsrfToken.class.getName().equals(name) || placeholder.getParameterName().equals(name)) {
+                return placeholder;
+            }
+            return super.getAttribute(name);
+        }
+    }
+}
@@ -1,39 +1,89 @@
 package com.mushroom.expense.controller;
 
+import com.mushroom.expense.dto.CategorySpend;
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseCursor;
+import com.mushroom.expense.dto.ExpenseRevision;
 import com.mushroom.expense.entity.*;
+import com.mushroom.expense.money.Money;
+import com.mushroom.expense.security.AppUserPrincipal;
 import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.DashboardService;
+import com.mushroom.expense.service.ExpenseExportService;
+import com.mushroom.expense.service.ExpenseRollupService;
 import com.mushroom.expense.service.ExpenseService;
-import com.mushroom.expense.service.UserService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
-import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.csrf.DeferredCsrfToken;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 
+import java.beans.PropertyEditorSupport;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Controller
 public class ExpenseController {
 
+    private static final int PAGE_SIZE = 5;
+    private static final int EXPORT_BUFFER_SIZE = 64 * 1024;
+
     private final ExpenseService expenseService;
     private final CategoryService categoryService;
-    private final UserService userService;
-
-    public ExpenseController(ExpenseService expenseService, CategoryService categoryService, UserService userService) {
+    private final DashboardService dashboardService;
+    private final ExpenseExportService expenseExportService;
+    private final ExpenseRollupService expenseRollupService;
+    private final DashboardFragmentCache dashboardFragmentCache;
+
+    public ExpenseController(ExpenseService expenseService, CategoryService categoryService,
+            DashboardService dashboardService, ExpenseExportService expenseExportService,
+            ExpenseRollupService expenseRollupService, DashboardFragmentCache dashboardFragmentCache) {
         this.expenseService = expenseService;
         this.categoryService = categoryService;
-        this.userService = userService;
+        this.dashboardService = dashboardService;
+        this.expenseExportService = expenseExportService;
+        this.expenseRollupService = expenseRollupService;
+        this.dashboardFragmentCache = dashboardFragmentCache;
+    }
+
+    /** Tax is optional on the form; a blank rate means no tax. */
+    @InitBinder("expense")
+    public void initExpenseBinder(WebDataBinder binder) {
+        binder.registerCustomEditor(int.class, "taxBasisPoints", new PropertyEditorSupport() {
+            @Override
+            public void setAsText(String text) {
+                setValue(text == null || text.isBlank() ? 0 : Math.toIntExact(Money.parse(text)));
+            }
+
+            @Override
+            public String getAsText() {
+                return Money.format(((Number) getValue()).longValue());
+            }
+        });
     }
 
     @GetMapping("/dashboard")
-    public String dashboard(@AuthenticationPrincipal UserDetails userDetails, Model model,
+    public String dashboard(@AuthenticationPrincipal AppUserPrincipal principal, Model model,
             @RequestParam(defaultValue = "0") int draftsPage,
             @RequestParam(defaultValue = "0") int pendingPage,
             @RequestParam(defaultValue = "0") int approvedPage,
@@ -45,11 +95,12 @@ public class ExpenseController {
             @RequestParam(required = false) LocalDate endDate,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(defaultValue = "date") String sortField,
-            @RequestParam(defaultValue = "DESC") String sortDir) {
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            HttpServletRequest request, HttpServletResponse response) {
 
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
-        String role = user.getRole();
-        int pageSize = 5;
+        User user = principal.toUser();
+        String role = principal.getRole();
+        int pageSize = PAGE_SIZE;
         Sort sort = sortDir.equalsIgnoreCase("ASC") ? Sort.by(sortField).ascending() : Sort.by(sortField).descending();
 
         // Add filter params to model for UI persistence
@@ -64,64 +115,138 @@ public class ExpenseController {
         if (role.equals("ROLE_ADMIN")) {
             return "redirect:/admin/users";
         } else if (role.equals("ROLE_MANAGER")) {
-            model.addAttribute("myDrafts",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.DRAFT, ExpenseStatus.QUERIES_RAISED), search,
-                            startDate, endDate, categoryId,
-                            PageRequest.of(draftsPage, pageSize, sort)));
-            model.addAttribute("pending",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.SUBMITTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(pendingPage, pageSize, sort)));
-            model.addAttribute("approved",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.APPROVED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(approvedPage, pageSize, sort)));
-            model.addAttribute("returned",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.QUERIES_RAISED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(returnedPage, pageSize, sort)));
-            model.addAttribute("rejected",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.REJECTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(rejectedPage, pageSize, sort)));
+            model.addAllAttributes(dashboardService.loadBucketSummaries(user, List.of(
+                    new DashboardBucket("myDrafts", List.of(ExpenseStatus.DRAFT, ExpenseStatus.QUERIES_RAISED), true,
+                            draftsPage),
+                    new DashboardBucket("pending", List.of(ExpenseStatus.SUBMITTED), true, pendingPage),
+                    new DashboardBucket("approved", List.of(ExpenseStatus.APPROVED), true, approvedPage),
+                    new DashboardBucket("returned", List.of(ExpenseStatus.QUERIES_RAISED), true, returnedPage),
+                    new DashboardBucket("rejected", List.of(ExpenseStatus.REJECTED), true, rejectedPage)),
+                    search, startDate, endDate, categoryId, pageSize, sort));
             return "manager/dashboard";
         } else if (role.equals("ROLE_ACCOUNTANT")) {
-            model.addAttribute("submittedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.SUBMITTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(submittedPage, pageSize, sort)));
-            model.addAttribute("approvedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(approvedPage, pageSize, sort)));
-            model.addAttribute("rejectedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.REJECTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(rejectedPage, pageSize, sort)));
+            loadReviewerBuckets(model, "accountant", user, List.of(
+                    new DashboardBucket("submittedExpenses", List.of(ExpenseStatus.SUBMITTED), false, submittedPage),
+                    new DashboardBucket("rejectedExpenses", List.of(ExpenseStatus.REJECTED), false, rejectedPage)),
+                    new DashboardBucket("approvedExpenses", List.of(ExpenseStatus.APPROVED), false, approvedPage),
+                    search, startDate, endDate, categoryId, pageSize, sort, request, response);
             return "accountant/dashboard";
         } else if (role.equals("ROLE_SUPERVISOR")) {
-            model.addAttribute("myDrafts",
-                    expenseService.getExpenses(user, List.of(ExpenseStatus.DRAFT, ExpenseStatus.QUERIES_RAISED), search,
-                            startDate, endDate, categoryId,
-                            PageRequest.of(draftsPage, pageSize, sort)));
-            model.addAttribute("submittedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.SUBMITTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(submittedPage, pageSize, sort)));
-            model.addAttribute("approvedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(approvedPage, pageSize, sort)));
-            model.addAttribute("rejectedExpenses",
-                    expenseService.getExpenses(null, List.of(ExpenseStatus.REJECTED), search, startDate, endDate,
-                            categoryId,
-                            PageRequest.of(rejectedPage, pageSize, sort)));
+            loadReviewerBuckets(model, "supervisor", user, List.of(
+                    new DashboardBucket("myDrafts", List.of(ExpenseStatus.DRAFT, ExpenseStatus.QUERIES_RAISED), true,
+                            draftsPage),
+                    new DashboardBucket("submittedExpenses", List.of(ExpenseStatus.SUBMITTED), false, submittedPage),
+                    new DashboardBucket("rejectedExpenses", List.of(ExpenseStatus.REJECTED), false, rejectedPage)),
+                    new DashboardBucket("approvedExpenses", List.of(ExpenseStatus.APPROVED), false, approvedPage),
+                    search, startDate, endDate, categoryId, pageSize, sort, request, response);
             return "supervisor/dashboard";
         }
 
         return "dashboard"; // Fallback
     }
 
+    /**
+     * Loads the reviewer tables plus the cursor-paged approved table. Relevance
+     * has no keyset, so under that sort the approved table stays newest first
+     * and is loaded on its own. Tables shared by all reviewers are served from
+     * {@link DashboardFragmentCache}; only the ones it misses are queried and
+     * rendered, and the page inserts them as {@code buckets.<name>}.
+     */
+    private void loadReviewerBuckets(Model model, String scope, User user, List<DashboardBucket> buckets,
+            DashboardBucket approvedBucket, String search, LocalDate startDate, LocalDate endDate, Long categoryId,
+            int pageSize, Sort sort, HttpServletRequest request, HttpServletResponse response) {
+        Sort approvedSort = cursorSort(sort);
+        List<DashboardBucket> all = new ArrayList<>(buckets);
+        all.add(approvedBucket);
+
+        Map<String, DashboardFragmentCache.RenderedBucket> rendered = new LinkedHashMap<>();
+        Map<String, DashboardFragmentCache.Key> misses = new LinkedHashMap<>();
+        List<DashboardBucket> toLoad = new ArrayList<>();
+        for (DashboardBucket bucket : all) {
+            if (!bucket.ownOnly()) {
+                DashboardFragmentCache.Key key = dashboardFragmentCache.key(scope, bucket, search, startDate,
+                        endDate, categoryId, bucket == approvedBucket ? approvedSort : sort);
+                DashboardFragmentCache.RenderedBucket cached = dashboardFragmentCache.get(key);
+                if (cached != null) {
+                    rendered.put(bucket.name(), cached);
+                    continue;
+                }
+                misses.put(bucket.name(), key);
+            }
+            toLoad.add(bucket);
+        }
+
+        boolean approvedApart = !approvedSort.equals(sort) && toLoad.remove(approvedBucket);
+        if (!toLoad.isEmpty()) {
+            model.addAllAttributes(dashboardService.loadBuckets(user, toLoad, search, startDate, endDate,
+                    categoryId, pageSize, sort));
+        }
+        if (approvedApart) {
+            model.addAllAttributes(dashboardService.loadBuckets(user, List.of(approvedBucket), search, startDate,
+                    endDate, categoryId, pageSize, approvedSort));
+        }
+        addNextCursor(model, approvedBucket.name(), "approvedCursor", approvedSort);
+        misses.forEach((name, key) -> rendered.put(name,
+                dashboardFragmentCache.render(key, model.asMap(), request, response)));
+        rendered.replaceAll((name, bucket) -> dashboardFragmentCache.serve(bucket, request));
+        model.addAttribute("buckets", rendered);
+
+        YearMonth month = YearMonth.now();
+        List<CategorySpend> spend = expenseRollupService.getSpendByCategory(month, month,
+                List.of(ExpenseStatus.APPROVED));
+        model.addAttribute("spendSummary", spend);
+        model.addAttribute("spendTotal", CategorySpend.total(spend));
+    }
+
+    private static Sort cursorSort(Sort sort) {
+        return ExpenseCursor.supports(sort) ? sort : Sort.by("date").descending();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addNextCursor(Model model, String bucketAttribute, String cursorAttribute, Sort sort) {
+        Page<Expense> page = (Page<Expense>) model.getAttribute(bucketAttribute);
+        if (page != null && page.hasNext() && page.hasContent()) {
+            List<Expense> content = page.getContent();
+            model.addAttribute(cursorAttribute, ExpenseCursor.after(content.get(content.size() - 1), sort).encode());
+        }
+    }
+
+    /**
+     * HTMX endpoint that appends the next keyset slice of a dashboard table.
+     * Accountants and supervisors see everyone's submitted, approved and
+     * rejected expenses; everything else is limited to the caller's own.
+     */
+    @GetMapping("/dashboard/rows")
+    public String dashboardRows(@AuthenticationPrincipal AppUserPrincipal principal, Model model,
+            @RequestParam ExpenseStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "date") String sortField,
+            @RequestParam(defaultValue = "DESC") String sortDir) {
+
+        User user = principal.toUser();
+        String role = principal.getRole();
+        Sort sort = cursorSort(sortDir.equalsIgnoreCase("ASC") ? Sort.by(sortField).ascending()
+                : Sort.by(sortField).descending());
+        boolean reviewer = role.equals("ROLE_ACCOUNTANT") || role.equals("ROLE_SUPERVISOR");
+        boolean shared = reviewer && status != ExpenseStatus.DRAFT && status != ExpenseStatus.QUERIES_RAISED;
+
+        model.addAttribute("rows", expenseService.getExpenses(shared ? null : user, List.of(status), search,
+                startDate, endDate, categoryId, cursor, PAGE_SIZE, sort));
+        model.addAttribute("status", status);
+        model.addAttribute("showStatus", role.equals("ROLE_SUPERVISOR"));
+        model.addAttribute("search", search);
+        model.addAttribute("startDate", startDate);
+        model.addAttribute("endDate", endDate);
+        model.addAttribute("categoryId", categoryId);
+        model.addAttribute("sortField", sortField);
+        model.addAttribute("sortDir", sortDir);
+        return "fragments/expense_rows :: rows";
+    }
+
     // --- Manager Actions ---
 
     @GetMapping("/expense/new")
@@ -141,36 +266,9 @@ public class ExpenseController {
             @RequestParam("receiptFiles") List<MultipartFile> files,
             @RequestParam(value = "deleteAttachmentIds", required = false) List<Long> deleteAttachmentIds,
             @RequestParam(value = "deletePrimaryImage", required = false, defaultValue = "false") boolean deletePrimaryImage,
-            @AuthenticationPrincipal UserDetails userDetails) throws IOException {
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
-
-        Expense expenseToSave;
-        if (expense.getId() != null) {
-            // Editing existing expense
-            expenseToSave = expenseService.findById(expense.getId()).orElseThrow();
-            // Update fields
-            expenseToSave.setCategory(expense.getCategory());
-            expenseToSave.setSubCategory(expense.getSubCategory());
-            expenseToSave.setDescription(expense.getDescription());
-            expenseToSave.setAmount(expense.getAmount());
-            expenseToSave.setDate(expense.getDate());
-            expenseToSave.setPaymentMode(expense.getPaymentMode());
-            expenseToSave.setTaxPercentage(expense.getTaxPercentage());
-            expenseToSave.setBatchId(expense.getBatchId());
-            expenseToSave.setBatchId(expense.getBatchId());
-
-            // If expense was rejected, reset to DRAFT so it can be resubmitted
-            if (expenseToSave.getStatus() == ExpenseStatus.REJECTED) {
-                expenseToSave.setStatus(ExpenseStatus.DRAFT);
-            }
-        } else {
-            // New expense
-            expenseToSave = expense;
-            expenseToSave.setUser(user);
-            expenseToSave.setStatus(ExpenseStatus.DRAFT);
-        }
-
-        expenseService.saveExpense(expenseToSave, files, deleteAttachmentIds, deletePrimaryImage);
+            @AuthenticationPrincipal AppUserPrincipal principal) throws IOException {
+        // Edits are loaded by the service, after the uploads are stored
+        expenseService.saveExpenseForm(expense, principal.toUser(), files, deleteAttachmentIds, deletePrimaryImage);
         return "redirect:/dashboard";
     }
 
@@ -182,8 +280,9 @@ public class ExpenseController {
             @RequestParam(required = false) LocalDate endDate,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(defaultValue = "date") String sortField,
-            @RequestParam(defaultValue = "DESC") String sortDir) {
-        expenseService.updateExpenseStatus(id, ExpenseStatus.SUBMITTED);
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false) Long version) {
+        expenseService.updateExpenseStatus(id, ExpenseStatus.SUBMITTED, version);
         return buildRedirectUrl(search, startDate, endDate, categoryId, sortField, sortDir);
     }
 
@@ -230,8 +329,9 @@ public class ExpenseController {
             @RequestParam(required = false) LocalDate endDate,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(defaultValue = "date") String sortField,
-            @RequestParam(defaultValue = "DESC") String sortDir) {
-        expenseService.updateExpenseStatus(id, ExpenseStatus.APPROVED);
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false) Long version) {
+        expenseService.updateExpenseStatus(id, ExpenseStatus.APPROVED, version);
         return buildRedirectUrl(search, startDate, endDate, categoryId, sortField, sortDir);
     }
 
@@ -239,18 +339,20 @@ public class ExpenseController {
     @PreAuthorize("hasAnyRole('ACCOUNTANT', 'SUPERVISOR')")
     public String rejectExpense(@PathVariable Long id,
             @RequestParam(value = "message", required = false) String message,
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AppUserPrincipal principal,
             @RequestParam(required = false) String search,
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(defaultValue = "date") String sortField,
-            @RequestParam(defaultValue = "DESC") String sortDir) {
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false) Long version) {
+        User user = principal.toUser();
         if (message != null && !message.trim().isEmpty()) {
-            expenseService.addComment(id, user, message);
+            expenseService.rejectWithComment(id, user, message, version);
+        } else {
+            expenseService.updateExpenseStatus(id, ExpenseStatus.REJECTED, version);
         }
-        expenseService.updateExpenseStatus(id, ExpenseStatus.REJECTED);
         return buildRedirectUrl(search, startDate, endDate, categoryId, sortField, sortDir);
     }
 
@@ -258,15 +360,16 @@ public class ExpenseController {
     @PreAuthorize("hasAnyRole('ACCOUNTANT', 'SUPERVISOR')")
     public String queryExpense(@PathVariable Long id,
             @RequestParam("message") String message,
-            @AuthenticationPrincipal UserDetails userDetails,
+            @AuthenticationPrincipal AppUserPrincipal principal,
             @RequestParam(required = false) String search,
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
             @RequestParam(required = false) Long categoryId,
             @RequestParam(defaultValue = "date") String sortField,
-            @RequestParam(defaultValue = "DESC") String sortDir) {
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
-        expenseService.addComment(id, user, message);
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            @RequestParam(required = false) Long version) {
+        User user = principal.toUser();
+        expenseService.addComment(id, user, message, version);
         return buildRedirectUrl(search, startDate, endDate, categoryId, sortField, sortDir);
     }
 
@@ -286,19 +389,46 @@ public class ExpenseController {
         return url.toString();
     }
 
+    /**
+     * The expense detail page, validated by an ETag built from the expense's
+     * version and comment count, the catalog version (category names), the
+     * caller's role (the buttons shown) and the session's CSRF token (which the
+     * forms carry, and which a new login replaces). A reload of an unchanged
+     * expense is answered with 304 before the expense, its attachments or
+     * comments load.
+     */
     @GetMapping("/expense/view/{id}")
-    public String viewExpense(@PathVariable Long id, Model model, @AuthenticationPrincipal UserDetails userDetails) {
+    public String viewExpense(@PathVariable Long id, Model model,
+            @AuthenticationPrincipal AppUserPrincipal principal, WebRequest request,
+            HttpServletRequest servletRequest, HttpServletResponse response) {
+        ExpenseRevision revision = expenseService.findRevision(id).orElseThrow();
+        String eTag = "\"expense-" + id + "-" + revision.version() + "-" + revision.commentCount() + "-"
+                + categoryService.getCatalogVersion() + "-" + principal.getRole() + "-"
+                + csrfTokenDigest(servletRequest) + "\"";
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
         Expense expense = expenseService.findById(id).orElseThrow();
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
 
         model.addAttribute("expense", expense);
         model.addAttribute("comments", expenseService.getComments(id));
-        model.addAttribute("userRole", user.getRole());
+        model.addAttribute("userRole", principal.getRole());
         return "expense_view";
     }
 
+    // The session's own token, not the masked copy each page gets, so it stays the same between requests
+    private static String csrfTokenDigest(HttpServletRequest request) {
+        DeferredCsrfToken token = (DeferredCsrfToken) request.getAttribute(DeferredCsrfToken.class.getName());
+        if (token == null) {
+            return "none";
+        }
+        return DigestUtils.md5DigestAsHex(token.get().getToken().getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+    }
+
     @GetMapping("/expense/export")
-    public void exportExpenses(@AuthenticationPrincipal UserDetails userDetails,
+    public void exportExpenses(@AuthenticationPrincipal AppUserPrincipal principal,
             @RequestParam(required = false) String search,
             @RequestParam(required = false) LocalDate startDate,
             @RequestParam(required = false) LocalDate endDate,
@@ -307,42 +437,17 @@ public class ExpenseController {
             @RequestParam(defaultValue = "DESC") String sortDir,
             jakarta.servlet.http.HttpServletResponse response) throws IOException {
 
-        User user = userService.findByUsername(userDetails.getUsername()).orElseThrow();
-        String role = user.getRole();
+        User user = principal.toUser();
         Sort sort = sortDir.equalsIgnoreCase("ASC") ? Sort.by(sortField).ascending() : Sort.by(sortField).descending();
-        PageRequest pageable = PageRequest.of(0, Integer.MAX_VALUE, sort);
-
-        List<Expense> expenses;
-
-        if (role.equals("ROLE_MANAGER")) {
-            Page<Expense> page = expenseService.getExpenses(user, List.of(ExpenseStatus.values()), search, startDate,
-                    endDate, categoryId, pageable);
-            expenses = page.getContent();
-        } else if (role.equals("ROLE_ACCOUNTANT") || role.equals("ROLE_SUPERVISOR")) {
-            Page<Expense> page = expenseService.getExpenses(null,
-                    List.of(ExpenseStatus.SUBMITTED, ExpenseStatus.APPROVED, ExpenseStatus.REJECTED), search, startDate,
-                    endDate, categoryId, pageable);
-            expenses = page.getContent();
-        } else {
-            expenses = List.of();
-        }
 
         response.setContentType("text/csv");
+        response.setCharacterEncoding("UTF-8");
         response.setHeader("Content-Disposition", "attachment; filename=\"expenses.csv\"");
 
-        try (java.io.PrintWriter writer = response.getWriter()) {
-            writer.println("ID,Date,Category,SubCategory,Amount,Status,Description,User");
-            for (Expense expense : expenses) {
-                writer.printf("%d,%s,%s,%s,%.2f,%s,\"%s\",%s%n",
-                        expense.getId(),
-                        expense.getDate(),
-                        expense.getCategory().getName(),
-                        expense.getSubCategory().getName(),
-                        expense.getAmount(),
-                        expense.getStatus(),
-                        expense.getDescription() != null ? expense.getDescription().replace("\"", "\"\"") : "",
-                        expense.getUser().getUsername());
-            }
-        }
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+        expenseExportService.writeCsvFor(user, search, startDate, endDate, categoryId, sort, writer, rows -> {
+        });
+        writer.flush();
     }
 }
@@ -0,0 +1,84 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.security.AppUserPrincipal;
+import com.mushroom.expense.service.ExportJob;
+import com.mushroom.expense.service.ExportJobService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.ui.Model;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+
+/**
+ * Background CSV exports. Submitting and polling return HTMX fragments; the
+ * finished file is served as a resource so HTTP Range requests (resumed
+ * downloads) are handled by Spring MVC.
+ */
+@Controller
+public class ExportController {
+
+    private final ExportJobService exportJobService;
+
+    public ExportController(ExportJobService exportJobService) {
+        this.exportJobService = exportJobService;
+    }
+
+    @PostMapping("/expense/export/jobs")
+    public String submitExport(@AuthenticationPrincipal AppUserPrincipal principal, Model model,
+            @RequestParam(required = false) String search,
+            @RequestParam(required = false) LocalDate startDate,
+            @RequestParam(required = false) LocalDate endDate,
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "date") String sortField,
+            @RequestParam(defaultValue = "DESC") String sortDir,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        User user = principal.toUser();
+        Sort sort = sortDir.equalsIgnoreCase("ASC") ? Sort.by(sortField).ascending() : Sort.by(sortField).descending();
+
+        model.addAttribute("job", exportJobService.submit(user, search, startDate, endDate, categoryId, sort, gzip));
+        return "fragments/export_job :: status";
+    }
+
+    @GetMapping("/expense/export/jobs/{id}")
+    public String exportStatus(@PathVariable String id, @AuthenticationPrincipal AppUserPrincipal principal,
+            Model model) {
+        model.addAttribute("job", exportJobService.findJob(id, principal.getUsername()).orElseThrow(this::gone));
+        return "fragments/export_job :: status";
+    }
+
+    @GetMapping("/expense/export/jobs/{id}/download")
+    public ResponseEntity<Resource> downloadExport(@PathVariable String id,
+            @AuthenticationPrincipal AppUserPrincipal principal) throws IOException {
+        ExportJob job = exportJobService.findJob(id, principal.getUsername())
+                .filter(found -> found.getStatus() == ExportJob.Status.COMPLETED)
+                .orElseThrow(this::gone);
+
+        // ETag and Last-Modified let clients resume with If-Range
+        return ResponseEntity.ok()
+                .contentType(job.isGzip() ? MediaType.parseMediaType("application/gzip")
+                        : MediaType.parseMediaType("text/csv"))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(job.getDownloadName()).build().toString())
+                .eTag(job.getId())
+                .lastModified(Files.getLastModifiedTime(job.getFile()).toInstant())
+                .body(new FileSystemResource(job.getFile()));
+    }
+
+    // Unknown, someone else's, or already purged once its retention ran out
+    private ResponseStatusException gone() {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, "This export no longer exists. Please export again.");
+    }
+}
@@ -0,0 +1,69 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.security.AppUserPrincipal;
+import com.mushroom.expense.service.ExpenseService;
+import com.mushroom.expense.service.ThumbnailService;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Previews of stored receipts, for pages that would otherwise pull the
+ * full-size photos from {@link AttachmentController}, to those it would serve
+ * the file to. A stored name never changes content, so its preview is cached
+ * by the browser for good. Files without a preview, such as PDFs, show a
+ * generic document icon.
+ */
+@Controller
+public class ThumbnailController {
+
+    private static final Resource DOCUMENT_PLACEHOLDER = new ClassPathResource("static/images/document-thumbnail.svg");
+    private static final MediaType SVG = MediaType.parseMediaType("image/svg+xml");
+
+    private final ThumbnailService thumbnailService;
+    private final ExpenseService expenseService;
+
+    public ThumbnailController(ThumbnailService thumbnailService, ExpenseService expenseService) {
+        this.thumbnailService = thumbnailService;
+        this.expenseService = expenseService;
+    }
+
+    @GetMapping("/thumbnails/{fileName:.+}")
+    public ResponseEntity<Resource> thumbnail(@PathVariable String fileName,
+            @AuthenticationPrincipal AppUserPrincipal principal) throws IOException {
+        // A preview shows as much as the file, so it is checked the same way
+        if (!expenseService.canViewFile(fileName, principal.toUser())) {
+            return ResponseEntity.notFound().build();
+        }
+        Optional<Path> thumbnail;
+        try {
+            thumbnail = thumbnailService.thumbnail(fileName);
+        } catch (NoSuchFileException | IllegalArgumentException ex) {
+            return ResponseEntity.notFound().build();
+        }
+        if (thumbnail.isEmpty()) {
+            // The icon may change between releases, so it is only cached for a while
+            return ResponseEntity.ok()
+                    .contentType(SVG)
+                    .cacheControl(CacheControl.maxAge(Duration.ofDays(1)).cachePrivate())
+                    .body(DOCUMENT_PLACEHOLDER);
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.IMAGE_JPEG)
+                .cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable())
+                .body(new FileSystemResource(thumbnail.get()));
+    }
+}
@@ -0,0 +1,26 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.money.MinorUnits;
+
+import java.util.List;
+
+/**
+ * Rolled-up spend for one category and subcategory over a report period.
+ * Totals are in minor units.
+ */
+public record CategorySpend(String categoryName, String subCategoryName, long expenseCount,
+        @MinorUnits long amountTotal, @MinorUnits long taxTotal) {
+
+    /** The sum of {@code rows}, with no category. */
+    public static CategorySpend total(List<CategorySpend> rows) {
+        long count = 0;
+        long amount = 0;
+        long tax = 0;
+        for (CategorySpend row : rows) {
+            count += row.expenseCount;
+            amount += row.amountTotal;
+            tax += row.taxTotal;
+        }
+        return new CategorySpend(null, null, count, amount, tax);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mushroom.expense.dto;
+
+import java.util.List;
+
+/**
+ * A slice of a keyset-paged listing. The cursors are opaque tokens that are
+ * passed back unchanged to fetch the adjacent slice; either is null when there
+ * is nothing further in that direction.
+ */
+public record CursorPage<T>(List<T> content, String nextCursor, String previousCursor) {
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    public boolean hasPrevious() {
+        return previousCursor != null;
+    }
+
+    public boolean isEmpty() {
+        return content.isEmpty();
+    }
+}
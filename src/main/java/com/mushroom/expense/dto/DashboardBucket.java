@@ -0,0 +1,26 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.entity.ExpenseStatus;
+
+import java.util.List;
+
+/**
+ * One table on a dashboard: the model attribute it is exposed as, the
+ * statuses it lists, whether it is limited to the current user's own
+ * expenses, and the page being viewed.
+ */
+public record DashboardBucket(String name, List<ExpenseStatus> statuses, boolean ownOnly, int page) {
+
+    public DashboardBucket {
+        if (name == null || !name.matches("[A-Za-z][A-Za-z0-9]*")) {
+            throw new IllegalArgumentException("Invalid bucket name: " + name);
+        }
+        if (statuses == null || statuses.isEmpty()) {
+            throw new IllegalArgumentException("Bucket " + name + " has no statuses");
+        }
+        if (page < 0) {
+            throw new IllegalArgumentException("Page index must not be less than zero");
+        }
+        statuses = List.copyOf(statuses);
+    }
+}
@@ -0,0 +1,111 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.entity.Expense;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keyset position within an expense listing, encoded as an opaque URL-safe
+ * token. A cursor records the sort it was issued for so that it cannot be
+ * replayed against a different ordering.
+ */
+public record ExpenseCursor(boolean forward, String sortField, Sort.Direction direction, String sortValue, long id) {
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * The sort actually used for keyset paging: the requested field followed by
+     * the id in the same direction, so every position is unique.
+     */
+    public static Sort keysetSort(Sort sort) {
+        Sort.Order order = primaryOrder(sort);
+        return Sort.by(new Sort.Order(order.getDirection(), order.getProperty()),
+                new Sort.Order(order.getDirection(), "id"));
+    }
+
+    /** Whether listings in this order can be cursor paged. */
+    public static boolean supports(Sort sort) {
+        return sort.stream().findFirst()
+                .map(order -> order.getProperty().equals("date") || order.getProperty().equals("amount"))
+                .orElse(false);
+    }
+
+    public static ExpenseCursor after(Expense expense, Sort sort) {
+        return of(true, expense, sort);
+    }
+
+    public static ExpenseCursor before(Expense expense, Sort sort) {
+        return of(false, expense, sort);
+    }
+
+    private static ExpenseCursor of(boolean forward, Expense expense, Sort sort) {
+        Sort.Order order = primaryOrder(sort);
+        Object value = switch (order.getProperty()) {
+            case "date" -> expense.getDate();
+            case "amount" -> expense.getAmount();
+            default -> throw new IllegalStateException();
+        };
+        return new ExpenseCursor(forward, order.getProperty(), order.getDirection(), String.valueOf(value),
+                expense.getId());
+    }
+
+    public static ExpenseCursor decode(String token, Sort sort) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, -1);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+        if (parts.length != 5 || !(parts[0].equals("F") || parts[0].equals("B"))) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        Sort.Order order = primaryOrder(sort);
+        if (!order.getProperty().equals(parts[1]) || !order.getDirection().name().equals(parts[2])) {
+            throw new IllegalArgumentException("Cursor does not match the requested sort");
+        }
+        try {
+            return new ExpenseCursor(parts[0].equals("F"), parts[1], order.getDirection(), parts[3],
+                    Long.parseLong(parts[4]));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+    }
+
+    public String encode() {
+        String raw = String.join(SEPARATOR, forward ? "F" : "B", sortField, direction.name(), sortValue,
+                Long.toString(id));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public KeysetScrollPosition toScrollPosition() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        try {
+            keys.put(sortField, switch (sortField) {
+                case "date" -> LocalDate.parse(sortValue);
+                case "amount" -> Long.valueOf(sortValue);
+                default -> throw new IllegalStateException();
+            });
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+        keys.put("id", id);
+        return forward ? ScrollPosition.forward(keys) : ScrollPosition.backward(keys);
+    }
+
+    private static Sort.Order primaryOrder(Sort sort) {
+        Sort.Order order = sort.stream().findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("A sort field is required for cursor paging"));
+        if (!supports(sort)) {
+            throw new IllegalArgumentException("Unsupported sort field: " + order.getProperty());
+        }
+        return order;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.entity.ExpenseStatus;
+
+import java.time.LocalDate;
+
+/**
+ * The columns of an expense CSV export, read straight from a joined query.
+ */
+public record ExpenseExportRow(Long id, LocalDate date, String categoryName, String subCategoryName, long amount,
+        ExpenseStatus status, String description, String username) {
+}
@@ -0,0 +1,12 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.entity.PaymentMode;
+
+import java.time.LocalDate;
+
+/**
+ * The columns of an expense the analytics cache keeps.
+ */
+public record ExpenseFact(Long id, LocalDate date, long amount, Long categoryId, Long subCategoryId,
+        PaymentMode paymentMode) {
+}
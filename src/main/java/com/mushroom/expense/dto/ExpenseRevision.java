@@ -0,0 +1,9 @@
+package com.mushroom.expense.dto;
+
+/**
+ * What the expense detail page depends on besides the catalog: the expense's
+ * version, which moves with every update to it or its attachments, and the
+ * number of comments, which are added without touching the expense.
+ */
+public record ExpenseRevision(long version, long commentCount) {
+}
@@ -0,0 +1,14 @@
+package com.mushroom.expense.dto;
+
+import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.money.MinorUnits;
+
+import java.time.LocalDate;
+
+/**
+ * Read-only listing row for an expense, loaded with a single joined query so
+ * that rendering it never touches a lazy association.
+ */
+public record ExpenseSummary(Long id, LocalDate date, @MinorUnits long amount, ExpenseStatus status,
+        String categoryName, String subCategoryName, String username, int attachmentCount, long version) {
+}
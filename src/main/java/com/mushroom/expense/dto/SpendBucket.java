@@ -0,0 +1,11 @@
+package com.mushroom.expense.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Approved spend for one group of an analytics query. The key is the week's
+ * Monday, the month ({@code yyyy-MM}), the category or subcategory id, or
+ * the payment mode, depending on the grouping.
+ */
+public record SpendBucket(String key, long expenseCount, BigDecimal amountTotal) {
+}
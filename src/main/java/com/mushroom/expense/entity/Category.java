@@ -1,10 +1,14 @@
 package com.mushroom.expense.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import java.util.List;
 import java.util.ArrayList;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "category")
 @Table(name = "categories")
 public class Category {
 
@@ -15,7 +19,13 @@ public class Category {
     @Column(nullable = false, unique = true)
     private String name;
 
+    // Receipts filed under this category are stored exactly as uploaded, e.g. for audits,
+    // metadata and all; no downscaled copy is kept next to them
+    @Column(nullable = false)
+    private boolean keepOriginalReceipts;
+
     @OneToMany(mappedBy = "category", cascade = CascadeType.ALL, orphanRemoval = true)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "categorySubCategories")
     private List<SubCategory> subCategories = new ArrayList<>();
 
     public Long getId() {
@@ -34,6 +44,14 @@ public class Category {
         this.name = name;
     }
 
+    public boolean isKeepOriginalReceipts() {
+        return keepOriginalReceipts;
+    }
+
+    public void setKeepOriginalReceipts(boolean keepOriginalReceipts) {
+        this.keepOriginalReceipts = keepOriginalReceipts;
+    }
+
     public List<SubCategory> getSubCategories() {
         return subCategories;
     }
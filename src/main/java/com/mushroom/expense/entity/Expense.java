@@ -1,21 +1,46 @@
 package com.mushroom.expense.entity;
 
+import com.mushroom.expense.money.MinorUnits;
 import jakarta.persistence.*;
+import org.hibernate.annotations.BatchSize;
+
 import java.time.LocalDate;
 
 @Entity
 @Table(name = "expenses")
+@NamedEntityGraph(name = Expense.LISTING_GRAPH, attributeNodes = {
+        @NamedAttributeNode("category"),
+        @NamedAttributeNode("subCategory"),
+        @NamedAttributeNode("user")
+})
 public class Expense {
 
+    /**
+     * Fetch plan for list pages: the to-one associations shown on every row.
+     * Attachments are batch-loaded on first access instead, which keeps paged
+     * queries free of collection fetch joins.
+     */
+    public static final String LISTING_GRAPH = "Expense.listing";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    /** Bumped by every update, including attachment changes; a stale write fails. */
+    @Version
+    private Long version;
+
+    /** What this expense contributed to the rollups when it was loaded or last recorded. */
+    @Transient
+    private ExpenseRollup.Contribution recordedContribution;
+
     @Column(nullable = false)
     private String description;
 
-    @Column(nullable = false)
-    private Double amount;
+    /** In minor units (paise). */
+    @MinorUnits
+    @Column(name = "amount_minor", nullable = false)
+    private long amount;
 
     @Column(nullable = false)
     private LocalDate date;
@@ -24,7 +49,10 @@ public class Expense {
     @Column(nullable = false)
     private PaymentMode paymentMode;
 
-    private Double taxPercentage = 0.0;
+    /** Tax rate in basis points, 1850 is 18.5%. */
+    @MinorUnits
+    @Column(name = "tax_basis_points", nullable = false)
+    private int taxBasisPoints;
 
     private String batchId; // Optional
 
@@ -46,7 +74,8 @@ public class Expense {
     @JoinColumn(name = "sub_category_id", nullable = false)
     private SubCategory subCategory;
 
-    @OneToMany(mappedBy = "expense", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.EAGER)
+    @OneToMany(mappedBy = "expense", cascade = CascadeType.ALL, orphanRemoval = true, fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
     private java.util.List<ExpenseAttachment> attachments = new java.util.ArrayList<>();
 
     public java.util.List<ExpenseAttachment> getAttachments() {
@@ -84,11 +113,11 @@ public class Expense {
         this.description = description;
     }
 
-    public Double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(Double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
@@ -108,12 +137,12 @@ public class Expense {
         this.paymentMode = paymentMode;
     }
 
-    public Double getTaxPercentage() {
-        return taxPercentage;
+    public int getTaxBasisPoints() {
+        return taxBasisPoints;
     }
 
-    public void setTaxPercentage(Double taxPercentage) {
-        this.taxPercentage = taxPercentage;
+    public void setTaxBasisPoints(int taxBasisPoints) {
+        this.taxBasisPoints = taxBasisPoints;
     }
 
     public String getBatchId() {
@@ -132,6 +161,14 @@ public class Expense {
         this.receiptImage = receiptImage;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     public ExpenseStatus getStatus() {
         return status;
     }
@@ -163,4 +200,17 @@ public class Expense {
     public void setSubCategory(SubCategory subCategory) {
         this.subCategory = subCategory;
     }
+
+    @PostLoad
+    void captureRecordedContribution() {
+        recordedContribution = ExpenseRollup.Contribution.of(this);
+    }
+
+    public ExpenseRollup.Contribution recordedContribution() {
+        return recordedContribution;
+    }
+
+    public void markContributionRecorded(ExpenseRollup.Contribution contribution) {
+        recordedContribution = contribution;
+    }
 }
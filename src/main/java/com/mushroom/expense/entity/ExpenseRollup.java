@@ -0,0 +1,61 @@
+package com.mushroom.expense.entity;
+
+import com.mushroom.expense.money.Money;
+import jakarta.persistence.*;
+
+/**
+ * Running totals of expenses per month, category, subcategory, status and
+ * payment mode. Rows are maintained incrementally by ExpenseRollupService and
+ * can be rebuilt from the expenses table at any time.
+ */
+@Entity
+@Table(name = "expense_rollups")
+public class ExpenseRollup {
+
+    @EmbeddedId
+    private ExpenseRollupId id;
+
+    @Column(nullable = false)
+    private long expenseCount;
+
+    /** In minor units, like {@link Expense#getAmount()}. */
+    @Column(nullable = false)
+    private long amountTotal;
+
+    @Column(nullable = false)
+    private long taxTotal;
+
+    public ExpenseRollupId getId() {
+        return id;
+    }
+
+    public long getExpenseCount() {
+        return expenseCount;
+    }
+
+    public long getAmountTotal() {
+        return amountTotal;
+    }
+
+    public long getTaxTotal() {
+        return taxTotal;
+    }
+
+    /**
+     * What a single expense adds to its rollup row. Null when the expense is
+     * incomplete and so not counted anywhere.
+     */
+    public record Contribution(ExpenseRollupId key, long amount, long tax) {
+
+        public static Contribution of(Expense expense) {
+            if (expense.getDate() == null || expense.getCategory() == null || expense.getSubCategory() == null
+                    || expense.getStatus() == null || expense.getPaymentMode() == null) {
+                return null;
+            }
+            return new Contribution(new ExpenseRollupId(expense.getDate().withDayOfMonth(1),
+                    expense.getCategory().getId(), expense.getSubCategory().getId(), expense.getStatus(),
+                    expense.getPaymentMode()), expense.getAmount(),
+                    Money.tax(expense.getAmount(), expense.getTaxBasisPoints()));
+        }
+    }
+}
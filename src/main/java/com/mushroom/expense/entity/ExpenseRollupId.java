@@ -0,0 +1,82 @@
+package com.mushroom.expense.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Objects;
+
+@Embeddable
+public class ExpenseRollupId implements Serializable {
+
+    /** First day of the month. */
+    @Column(name = "rollup_month", nullable = false)
+    private LocalDate month;
+
+    @Column(name = "category_id", nullable = false)
+    private Long categoryId;
+
+    @Column(name = "sub_category_id", nullable = false)
+    private Long subCategoryId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private ExpenseStatus status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private PaymentMode paymentMode;
+
+    public ExpenseRollupId() {
+    }
+
+    public ExpenseRollupId(LocalDate month, Long categoryId, Long subCategoryId, ExpenseStatus status,
+            PaymentMode paymentMode) {
+        this.month = month;
+        this.categoryId = categoryId;
+        this.subCategoryId = subCategoryId;
+        this.status = status;
+        this.paymentMode = paymentMode;
+    }
+
+    public LocalDate getMonth() {
+        return month;
+    }
+
+    public Long getCategoryId() {
+        return categoryId;
+    }
+
+    public Long getSubCategoryId() {
+        return subCategoryId;
+    }
+
+    public ExpenseStatus getStatus() {
+        return status;
+    }
+
+    public PaymentMode getPaymentMode() {
+        return paymentMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ExpenseRollupId other)) {
+            return false;
+        }
+        return Objects.equals(month, other.month) && Objects.equals(categoryId, other.categoryId)
+                && Objects.equals(subCategoryId, other.subCategoryId) && status == other.status
+                && paymentMode == other.paymentMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(month, categoryId, subCategoryId, status, paymentMode);
+    }
+}
@@ -1,8 +1,12 @@
 package com.mushroom.expense.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "subCategory")
 @Table(name = "sub_categories")
 public class SubCategory {
 
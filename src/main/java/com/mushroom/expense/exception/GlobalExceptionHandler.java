@@ -1,8 +1,13 @@
 package com.mushroom.expense.exception;
 
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 import org.springframework.ui.Model;
 
@@ -15,6 +20,21 @@ public class GlobalExceptionHandler {
         return "redirect:/dashboard";
     }
 
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public String handleConflict(OptimisticLockingFailureException ex, Model model) {
+        model.addAttribute("errorMessage",
+                "This expense was changed by someone else in the meantime. Reload it and try again.");
+        return "error";
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ModelAndView handleResponseStatus(ResponseStatusException ex) {
+        ModelAndView modelAndView = new ModelAndView("error", ex.getStatusCode());
+        modelAndView.addObject("errorMessage", ex.getReason());
+        return modelAndView;
+    }
+
     @ExceptionHandler(Exception.class)
     public String handleException(Exception ex, Model model) {
         model.addAttribute("errorMessage", ex.getMessage());
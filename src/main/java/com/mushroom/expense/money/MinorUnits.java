@@ -0,0 +1,16 @@
+package com.mushroom.expense.money;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code long} or {@code int} holding hundredths, such as an amount in
+ * paise or a rate in basis points. Forms and {@code ${{...}}} in templates
+ * then show and accept it as a two-decimal number.
+ */
+@Target({ ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER })
+@Retention(RetentionPolicy.RUNTIME)
+public @interface MinorUnits {
+}
@@ -0,0 +1,32 @@
+package com.mushroom.expense.money;
+
+import org.springframework.format.AnnotationFormatterFactory;
+import org.springframework.format.Parser;
+import org.springframework.format.Printer;
+
+import java.util.Set;
+
+/**
+ * Binds {@link MinorUnits} fields to two-decimal text with {@link Money}.
+ */
+public class MinorUnitsFormatterFactory implements AnnotationFormatterFactory<MinorUnits> {
+
+    @Override
+    public Set<Class<?>> getFieldTypes() {
+        return Set.of(Long.class, long.class, Integer.class, int.class);
+    }
+
+    @Override
+    public Printer<?> getPrinter(MinorUnits annotation, Class<?> fieldType) {
+        Printer<Number> printer = (value, locale) -> Money.format(value.longValue());
+        return printer;
+    }
+
+    @Override
+    public Parser<?> getParser(MinorUnits annotation, Class<?> fieldType) {
+        if (fieldType == Integer.class || fieldType == int.class) {
+            return (text, locale) -> Math.toIntExact(Money.parse(text));
+        }
+        return (text, locale) -> Money.parse(text);
+    }
+}
@@ -0,0 +1,98 @@
+package com.mushroom.expense.money;
+
+import java.math.BigDecimal;
+
+/**
+ * Money is held as a {@code long} count of minor units (paise), and rates as
+ * basis points (hundredths of a percent), so sums are exact and never box.
+ * These helpers convert to and from two-decimal text without going through
+ * floating point.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+
+    private static final long UNIT = 100;
+    private static final long BASIS_POINTS = 10_000;
+
+    private Money() {
+    }
+
+    /**
+     * Parses a decimal such as {@code "12.5"} into {@code 1250}. More than two
+     * decimal places is rejected rather than rounded.
+     */
+    public static long parse(String text) {
+        String value = text.trim();
+        int i = 0;
+        boolean negative = false;
+        if (value.startsWith("-") || value.startsWith("+")) {
+            negative = value.charAt(0) == '-';
+            i = 1;
+        }
+        long units = 0;
+        long fraction = 0;
+        int fractionDigits = -1;
+        boolean hasDigits = false;
+        try {
+            for (; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '.' && fractionDigits < 0) {
+                    fractionDigits = 0;
+                } else if (c >= '0' && c <= '9') {
+                    hasDigits = true;
+                    if (fractionDigits < 0) {
+                        units = Math.addExact(Math.multiplyExact(units, 10), c - '0');
+                    } else if (++fractionDigits > SCALE) {
+                        throw new IllegalArgumentException("At most " + SCALE + " decimal places: " + text);
+                    } else {
+                        fraction = fraction * 10 + (c - '0');
+                    }
+                } else {
+                    throw new IllegalArgumentException("Not an amount: " + text);
+                }
+            }
+            if (!hasDigits) {
+                throw new IllegalArgumentException("Not an amount: " + text);
+            }
+            for (int d = Math.max(fractionDigits, 0); d < SCALE; d++) {
+                fraction *= 10;
+            }
+            long minor = Math.addExact(Math.multiplyExact(units, UNIT), fraction);
+            return negative ? -minor : minor;
+        } catch (ArithmeticException ex) {
+            throw new IllegalArgumentException("Amount out of range: " + text, ex);
+        }
+    }
+
+    public static String format(long minor) {
+        return appendTo(new StringBuilder(24), minor).toString();
+    }
+
+    /** Appends {@code minor} as a plain two-decimal number, e.g. {@code 1250} as {@code 12.50}. */
+    public static StringBuilder appendTo(StringBuilder out, long minor) {
+        if (minor < 0) {
+            out.append('-');
+        }
+        long units = Math.abs(minor / UNIT);
+        long cents = Math.abs(minor % UNIT);
+        out.append(units).append('.');
+        if (cents < 10) {
+            out.append('0');
+        }
+        return out.append(cents);
+    }
+
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    /**
+     * The tax on {@code amountMinor} at {@code basisPoints}, rounded half up to
+     * the minor unit. Matches the rollup SQL, which uses the same integer
+     * arithmetic.
+     */
+    public static long tax(long amountMinor, int basisPoints) {
+        return (amountMinor * basisPoints + BASIS_POINTS / 2) / BASIS_POINTS;
+    }
+}
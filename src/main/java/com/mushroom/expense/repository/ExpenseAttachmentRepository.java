@@ -1,7 +1,39 @@
 package com.mushroom.expense.repository;
 
 import com.mushroom.expense.entity.ExpenseAttachment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface ExpenseAttachmentRepository extends JpaRepository<ExpenseAttachment, Long> {
+
+    /** How many attachments share the stored file {@code fileName}. */
+    long countByFileName(String fileName);
+
+    @Query("select distinct a.fileName from ExpenseAttachment a")
+    List<String> findDistinctFileNames();
+
+    /** The next {@code pageable} distinct stored file names after {@code after}, in order. */
+    @Query("select distinct a.fileName from ExpenseAttachment a where a.fileName > :after order by a.fileName")
+    List<String> findFileNamesAfter(@Param("after") String after, Pageable pageable);
+
+    /**
+     * Like {@link #findFileNamesAfter}, but only names still under the old
+     * {@code UUID_originalName} scheme: anything shaped like a
+     * content-addressed name (64 characters before an optional extension,
+     * with no {@code _} or {@code -}) is left out.
+     */
+    @Query("select distinct a.fileName from ExpenseAttachment a where a.fileName > :after"
+            + " and (locate('_', a.fileName) > 0 or locate('-', a.fileName) > 0"
+            + " or (length(a.fileName) <> 64 and locate('.', a.fileName) <> 65))"
+            + " order by a.fileName")
+    List<String> findLegacyFileNamesAfter(@Param("after") String after, Pageable pageable);
+
+    @Modifying
+    @Query("update ExpenseAttachment a set a.fileName = :newName where a.fileName = :oldName")
+    int renameFile(@Param("oldName") String oldName, @Param("newName") String newName);
 }
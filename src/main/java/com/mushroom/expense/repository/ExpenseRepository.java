@@ -1,16 +1,32 @@
 package com.mushroom.expense.repository;
 
+import com.mushroom.expense.dto.ExpenseFact;
+import com.mushroom.expense.dto.ExpenseRevision;
+import com.mushroom.expense.dto.ExpenseSummary;
 import com.mushroom.expense.entity.Expense;
 import com.mushroom.expense.entity.ExpenseStatus;
 import com.mushroom.expense.entity.User;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-public interface ExpenseRepository extends JpaRepository<Expense, Long>, JpaSpecificationExecutor<Expense> {
+public interface ExpenseRepository
+        extends JpaRepository<Expense, Long>, JpaSpecificationExecutor<Expense>, ExpenseRepositoryCustom {
     List<Expense> findByUser(User user);
 
     Page<Expense> findByUser(User user, Pageable pageable);
@@ -22,4 +38,59 @@ public interface ExpenseRepository extends JpaRepository<Expense, Long>, JpaSpec
     List<Expense> findByStatus(ExpenseStatus status);
 
     Page<Expense> findByStatus(ExpenseStatus status, Pageable pageable);
+
+    @Override
+    @EntityGraph(Expense.LISTING_GRAPH)
+    Page<Expense> findAll(Specification<Expense> spec, Pageable pageable);
+
+    @Query("select e from Expense e join fetch e.category join fetch e.subCategory join fetch e.user where e.id in :ids")
+    List<Expense> findAllWithDetailsByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.mushroom.expense.dto.ExpenseSummary(e.id, e.date, e.amount, e.status, c.name, s.name,"
+            + " u.username, size(e.attachments), e.version)"
+            + " from Expense e join e.category c join e.subCategory s join e.user u where e.id in :ids")
+    List<ExpenseSummary> findSummariesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select new com.mushroom.expense.dto.ExpenseRevision(e.version,"
+            + " (select count(c) from ExpenseComment c where c.expense = e)) from Expense e where e.id = :id")
+    Optional<ExpenseRevision> findRevisionById(@Param("id") Long id);
+
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.mushroom.expense.dto.ExpenseFact(e.id, e.date, e.amount, e.category.id, e.subCategory.id,"
+            + " e.paymentMode) from Expense e where e.status = :status")
+    Stream<ExpenseFact> streamFactsByStatus(@Param("status") ExpenseStatus status);
+
+    boolean existsByReceiptImage(String receiptImage);
+
+    /**
+     * Whether the stored file {@code fileName} belongs, as an attachment or
+     * receipt image, to an expense of {@code userId} or to one in
+     * {@code statuses}.
+     */
+    @Query("select count(e) > 0 from Expense e where (e.user.id = :userId or e.status in :statuses)"
+            + " and (e.receiptImage = :fileName or exists (select a.id from ExpenseAttachment a"
+            + " where a.expense = e and a.fileName = :fileName))")
+    boolean existsVisibleReference(@Param("fileName") String fileName, @Param("userId") Long userId,
+            @Param("statuses") Collection<ExpenseStatus> statuses);
+
+    /** The next {@code pageable} distinct receipt images after {@code after}, in order. */
+    @Query("select distinct e.receiptImage from Expense e where e.receiptImage > :after order by e.receiptImage")
+    List<String> findReceiptImagesAfter(@Param("after") String after, Pageable pageable);
+
+    /** Like {@link #findReceiptImagesAfter}, without content-addressed names, as for attachments. */
+    @Query("select distinct e.receiptImage from Expense e where e.receiptImage > :after"
+            + " and (locate('_', e.receiptImage) > 0 or locate('-', e.receiptImage) > 0"
+            + " or (length(e.receiptImage) <> 64 and locate('.', e.receiptImage) <> 65))"
+            + " order by e.receiptImage")
+    List<String> findLegacyReceiptImagesAfter(@Param("after") String after, Pageable pageable);
+
+    /** Renames a legacy receipt image, moving the version on so edit forms showing the old name are refused. */
+    @Modifying
+    @Query("update Expense e set e.receiptImage = :newName, e.version = e.version + 1 where e.receiptImage = :oldName")
+    int renameReceiptImage(@Param("oldName") String oldName, @Param("newName") String newName);
+
+    @Modifying
+    @Query("update Expense e set e.version = e.version + 1"
+            + " where e.id in (select a.expense.id from ExpenseAttachment a where a.fileName = :fileName)")
+    int incrementVersionsByAttachment(@Param("fileName") String fileName);
 }
@@ -0,0 +1,38 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseExportRow;
+import com.mushroom.expense.entity.Expense;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface ExpenseRepositoryCustom {
+
+    /**
+     * Pages every dashboard bucket in a single statement. Each returned row is
+     * either on the requested page of its bucket or is the bucket's first row,
+     * which is kept so the bucket total is known even when the page is empty.
+     */
+    List<BucketRow> findBucketRows(Long userId, List<DashboardBucket> buckets, String keyword,
+            LocalDate startDate, LocalDate endDate, Long categoryId, int pageSize, Sort sort);
+
+    /**
+     * Streams the export columns of every expense matching {@code spec} in
+     * {@code sort} order through a forward-only cursor. The caller must close
+     * the stream and consume it inside a transaction.
+     */
+    Stream<ExpenseExportRow> streamExportRows(Specification<Expense> spec, Sort sort, int fetchSize);
+
+    /**
+     * Bumps the version of a managed expense when the transaction commits,
+     * for changes its own columns do not show, such as attachments.
+     */
+    void incrementVersion(Expense expense);
+
+    record BucketRow(String bucket, Long expenseId, long rowNumber, long total) {
+    }
+}
@@ -0,0 +1,193 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseExportRow;
+import com.mushroom.expense.entity.Category;
+import com.mushroom.expense.entity.Expense;
+import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.entity.SubCategory;
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.specification.ExpenseSearch;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.AvailableHints;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class ExpenseRepositoryImpl implements ExpenseRepositoryCustom {
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "date", "e.date",
+            "amount", "e.amount_minor");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<BucketRow> findBucketRows(Long userId, List<DashboardBucket> buckets, String keyword,
+            LocalDate startDate, LocalDate endDate, Long categoryId, int pageSize, Sort sort) {
+        if (buckets.isEmpty()) {
+            return List.of();
+        }
+        boolean hasKeyword = ExpenseSearch.hasKeyword(keyword);
+        boolean anyOwnOnly = buckets.stream().anyMatch(DashboardBucket::ownOnly);
+        if (anyOwnOnly && userId == null) {
+            throw new IllegalArgumentException("A user is required for buckets limited to own expenses");
+        }
+
+        // Bucket definitions are code-defined (validated names, enum statuses,
+        // integer offsets), so they are inlined as a VALUES table. Overlapping
+        // buckets simply contribute one row per matching status.
+        StringBuilder values = new StringBuilder();
+        for (DashboardBucket bucket : buckets) {
+            long firstRow = (long) bucket.page() * pageSize;
+            for (ExpenseStatus status : bucket.statuses()) {
+                if (values.length() > 0) {
+                    values.append(", ");
+                }
+                values.append("('").append(bucket.name()).append("', '").append(status.name()).append("', ")
+                        .append(bucket.ownOnly() ? 1 : 0).append(", ").append(firstRow).append(")");
+            }
+        }
+
+        StringBuilder sql = new StringBuilder()
+                .append("SELECT r.bucket, r.id, r.rn, r.total FROM (")
+                .append(" SELECT b.bucket AS bucket, e.id AS id, b.first_row AS first_row,")
+                .append(" ROW_NUMBER() OVER (PARTITION BY b.bucket ORDER BY ").append(orderBy(sort, hasKeyword)).append(") AS rn,")
+                .append(" COUNT(*) OVER (PARTITION BY b.bucket) AS total")
+                .append(" FROM expenses e")
+                .append(" JOIN (VALUES ").append(values).append(") AS b(bucket, status, own_only, first_row)")
+                .append(" ON e.status = b.status");
+        if (anyOwnOnly) {
+            sql.append(" AND (b.own_only = 0 OR e.user_id = :userId)");
+        }
+
+        Map<String, Object> parameters = new HashMap<>();
+        List<String> predicates = new ArrayList<>();
+        if (anyOwnOnly) {
+            parameters.put("userId", userId);
+        }
+        if (startDate != null) {
+            predicates.add("e.date >= :startDate");
+            parameters.put("startDate", startDate);
+        }
+        if (endDate != null) {
+            predicates.add("e.date <= :endDate");
+            parameters.put("endDate", endDate);
+        }
+        if (categoryId != null) {
+            predicates.add("e.category_id = :categoryId");
+            parameters.put("categoryId", categoryId);
+        }
+        if (hasKeyword) {
+            predicates.add("(" + ExpenseSearch.documentSql("e") + " LIKE :keyword"
+                    + " OR e.category_id IN (SELECT c.id FROM categories c WHERE LOWER(c.name) LIKE :keyword)"
+                    + " OR e.sub_category_id IN (SELECT s.id FROM sub_categories s WHERE LOWER(s.name) LIKE :keyword))");
+            parameters.put("keyword", ExpenseSearch.likePattern(keyword));
+            if (sort.getOrderFor(ExpenseSearch.SORT_FIELD) != null) {
+                parameters.put("rankKeyword", ExpenseSearch.normalize(keyword));
+            }
+        }
+        if (!predicates.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", predicates));
+        }
+
+        sql.append(") r")
+                .append(" WHERE r.rn = 1 OR (r.rn > r.first_row AND r.rn <= r.first_row + :pageSize)")
+                .append(" ORDER BY r.bucket, r.rn");
+        parameters.put("pageSize", pageSize);
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        parameters.forEach(query::setParameter);
+
+        List<BucketRow> rows = new ArrayList<>();
+        for (Object result : query.getResultList()) {
+            Object[] columns = (Object[]) result;
+            rows.add(new BucketRow((String) columns[0], ((Number) columns[1]).longValue(),
+                    ((Number) columns[2]).longValue(), ((Number) columns[3]).longValue()));
+        }
+        return rows;
+    }
+
+    @Override
+    public void incrementVersion(Expense expense) {
+        entityManager.lock(expense, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+    }
+
+    @Override
+    public Stream<ExpenseExportRow> streamExportRows(Specification<Expense> spec, Sort sort, int fetchSize) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<ExpenseExportRow> query = criteriaBuilder.createQuery(ExpenseExportRow.class);
+        Root<Expense> root = query.from(Expense.class);
+        Join<Expense, Category> category = root.join("category");
+        Join<Expense, SubCategory> subCategory = root.join("subCategory");
+        Join<Expense, User> user = root.join("user");
+        query.select(criteriaBuilder.construct(ExpenseExportRow.class,
+                root.get("id"), root.get("date"), category.get("name"), subCategory.get("name"), root.get("amount"),
+                root.get("status"), root.get("description"), user.get("username")));
+
+        Predicate predicate = spec.toPredicate(root, query, criteriaBuilder);
+        if (predicate != null) {
+            query.where(predicate);
+        }
+        if (sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort.and(Sort.by(sort.iterator().next().getDirection(), "id")), root,
+                    criteriaBuilder));
+        }
+
+        return entityManager.createQuery(query)
+                .setHint(AvailableHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(AvailableHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private String orderBy(Sort sort, boolean hasKeyword) {
+        List<String> orders = new ArrayList<>();
+        String direction = " DESC";
+        for (Sort.Order order : sort) {
+            if (order.getProperty().equals(ExpenseSearch.SORT_FIELD)) {
+                // Best match first, newest first among equals; without a
+                // keyword there is nothing to rank so it is just newest first
+                if (hasKeyword) {
+                    orders.add(ExpenseSearch.rankSql(dialect(), ExpenseSearch.documentSql("e"), ":rankKeyword")
+                            + " DESC");
+                }
+                orders.add("e.date DESC");
+                direction = " DESC";
+                continue;
+            }
+            String column = SORT_COLUMNS.get(order.getProperty());
+            if (column == null) {
+                throw new IllegalArgumentException("Unsupported sort field: " + order.getProperty());
+            }
+            direction = order.isAscending() ? " ASC" : " DESC";
+            orders.add(column + direction);
+        }
+        // Tie-break on id so page boundaries are stable between requests and
+        // line up with the keyset order used by cursor paging
+        orders.add("e.id" + direction);
+        return String.join(", ", orders);
+    }
+
+    private Dialect dialect() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+    }
+}
@@ -0,0 +1,26 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.dto.CategorySpend;
+import com.mushroom.expense.entity.ExpenseRollup;
+import com.mushroom.expense.entity.ExpenseRollupId;
+import com.mushroom.expense.entity.ExpenseStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+public interface ExpenseRollupRepository extends JpaRepository<ExpenseRollup, ExpenseRollupId>,
+        ExpenseRollupRepositoryCustom {
+
+    @Query("select new com.mushroom.expense.dto.CategorySpend(c.name, s.name, sum(r.expenseCount),"
+            + " sum(r.amountTotal), sum(r.taxTotal))"
+            + " from ExpenseRollup r join Category c on c.id = r.id.categoryId"
+            + " join SubCategory s on s.id = r.id.subCategoryId"
+            + " where r.id.month between :fromMonth and :toMonth and r.id.status in :statuses"
+            + " group by c.name, s.name order by c.name, s.name")
+    List<CategorySpend> findSpendByCategory(@Param("fromMonth") LocalDate fromMonth,
+            @Param("toMonth") LocalDate toMonth, @Param("statuses") Collection<ExpenseStatus> statuses);
+}
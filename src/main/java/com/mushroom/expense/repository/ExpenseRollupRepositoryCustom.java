@@ -0,0 +1,15 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.entity.ExpenseRollupId;
+
+public interface ExpenseRollupRepositoryCustom {
+
+    /**
+     * Adds the deltas to the row for {@code key}, creating it if needed, and
+     * removes the row once it no longer counts any expense.
+     */
+    void applyDelta(ExpenseRollupId key, long countDelta, long amountDelta, long taxDelta);
+
+    /** Recomputes every row from the expenses table. */
+    void rebuild();
+}
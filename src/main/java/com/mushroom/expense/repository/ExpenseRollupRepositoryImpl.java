@@ -0,0 +1,95 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.entity.ExpenseRollupId;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.query.NativeQuery;
+
+public class ExpenseRollupRepositoryImpl implements ExpenseRollupRepositoryCustom {
+
+    private static final String KEY_COLUMNS = "rollup_month, category_id, sub_category_id, status, payment_mode";
+
+    private static final String POSTGRES_UPSERT = "INSERT INTO expense_rollups (" + KEY_COLUMNS
+            + ", expense_count, amount_total, tax_total)"
+            + " VALUES (:month, :categoryId, :subCategoryId, :status, :paymentMode, :count, :amount, :tax)"
+            + " ON CONFLICT (" + KEY_COLUMNS + ") DO UPDATE SET"
+            + " expense_count = expense_rollups.expense_count + EXCLUDED.expense_count,"
+            + " amount_total = expense_rollups.amount_total + EXCLUDED.amount_total,"
+            + " tax_total = expense_rollups.tax_total + EXCLUDED.tax_total";
+
+    private static final String STANDARD_MERGE = "MERGE INTO expense_rollups r"
+            + " USING (VALUES (CAST(:month AS DATE), CAST(:categoryId AS BIGINT), CAST(:subCategoryId AS BIGINT),"
+            + " CAST(:status AS VARCHAR(32)), CAST(:paymentMode AS VARCHAR(32)), CAST(:count AS BIGINT),"
+            + " CAST(:amount AS BIGINT), CAST(:tax AS BIGINT)))"
+            + " AS d(" + KEY_COLUMNS + ", expense_count, amount_total, tax_total)"
+            + " ON r.rollup_month = d.rollup_month AND r.category_id = d.category_id"
+            + " AND r.sub_category_id = d.sub_category_id AND r.status = d.status AND r.payment_mode = d.payment_mode"
+            + " WHEN MATCHED THEN UPDATE SET expense_count = r.expense_count + d.expense_count,"
+            + " amount_total = r.amount_total + d.amount_total, tax_total = r.tax_total + d.tax_total"
+            + " WHEN NOT MATCHED THEN INSERT (" + KEY_COLUMNS + ", expense_count, amount_total, tax_total)"
+            + " VALUES (d.rollup_month, d.category_id, d.sub_category_id, d.status, d.payment_mode, d.expense_count,"
+            + " d.amount_total, d.tax_total)";
+
+    private static final String DELETE_EMPTY = "DELETE FROM expense_rollups WHERE rollup_month = :month"
+            + " AND category_id = :categoryId AND sub_category_id = :subCategoryId AND status = :status"
+            + " AND payment_mode = :paymentMode AND expense_count <= 0";
+
+    private static final String MONTH_OF_DATE = "CAST(DATE_TRUNC('month', date) AS DATE)";
+
+    private static final String REBUILD = "INSERT INTO expense_rollups (" + KEY_COLUMNS
+            + ", expense_count, amount_total, tax_total)"
+            + " SELECT " + MONTH_OF_DATE + ", category_id, sub_category_id, status, payment_mode, COUNT(*),"
+            + " SUM(amount_minor), SUM((amount_minor * tax_basis_points + 5000) / 10000)"
+            + " FROM expenses GROUP BY " + MONTH_OF_DATE + ", category_id, sub_category_id, status, payment_mode";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public void applyDelta(ExpenseRollupId key, long countDelta, long amountDelta, long taxDelta) {
+        Query upsert = rollupUpdate(dialect() instanceof PostgreSQLDialect ? POSTGRES_UPSERT : STANDARD_MERGE);
+        bindKey(upsert, key);
+        upsert.setParameter("count", countDelta)
+                .setParameter("amount", amountDelta)
+                .setParameter("tax", taxDelta)
+                .executeUpdate();
+        if (countDelta < 0) {
+            Query delete = rollupUpdate(DELETE_EMPTY);
+            bindKey(delete, key);
+            delete.executeUpdate();
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        rollupUpdate("DELETE FROM expense_rollups").executeUpdate();
+        rollupUpdate(REBUILD).executeUpdate();
+    }
+
+    /**
+     * A native statement that only writes expense_rollups. Declaring that lets
+     * Hibernate leave the rest of the second-level cache alone; an undeclared
+     * native update invalidates every region.
+     */
+    private Query rollupUpdate(String sql) {
+        return entityManager.createNativeQuery(sql).unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace("expense_rollups");
+    }
+
+    private static void bindKey(Query query, ExpenseRollupId key) {
+        query.setParameter("month", key.getMonth())
+                .setParameter("categoryId", key.getCategoryId())
+                .setParameter("subCategoryId", key.getSubCategoryId())
+                .setParameter("status", key.getStatus().name())
+                .setParameter("paymentMode", key.getPaymentMode().name());
+    }
+
+    private Dialect dialect() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect();
+    }
+}
@@ -0,0 +1,13 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.entity.FileDeletion;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface FileDeletionRepository extends JpaRepository<FileDeletion, Long> {
+
+    List<FileDeletion> findByNextAttemptAtLessThanEqualOrderById(LocalDateTime now, Pageable pageable);
+}
@@ -1,9 +1,17 @@
 package com.mushroom.expense.repository;
 
 import com.mushroom.expense.entity.SubCategory;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
 import java.util.List;
 
 public interface SubCategoryRepository extends JpaRepository<SubCategory, Long> {
+    // Fetches the category too: the result is cached and rendered outside any session.
+    // The ids also go to the Hibernate query cache, invalidated by any sub_categories write.
+    @EntityGraph(attributePaths = "category")
+    @QueryHints({ @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = "subCategoriesByCategory") })
     List<SubCategory> findByCategoryId(Long categoryId);
 }
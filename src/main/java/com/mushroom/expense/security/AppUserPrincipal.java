@@ -0,0 +1,121 @@
+package com.mushroom.expense.security;
+
+import com.mushroom.expense.entity.User;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The logged-in user, captured once at authentication and kept in the
+ * session, so handlers know who is calling without going back to the
+ * database. Admin edits expire the user's sessions (see {@link UserSessions})
+ * rather than updating this snapshot.
+ */
+public class AppUserPrincipal implements UserDetails, CredentialsContainer {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long id;
+    private final String username;
+    private String password;
+    private final String role;
+    private final boolean enabled;
+
+    public AppUserPrincipal(Long id, String username, String password, String role, boolean enabled) {
+        this.id = id;
+        this.username = username;
+        this.password = password;
+        this.role = role;
+        this.enabled = enabled;
+    }
+
+    public static AppUserPrincipal from(User user) {
+        return new AppUserPrincipal(user.getId(), user.getUsername(), user.getPassword(), user.getRole(),
+                user.isEnabled());
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    /** The role with its prefix, e.g. {@code ROLE_MANAGER}, as stored on {@link User}. */
+    public String getRole() {
+        return role;
+    }
+
+    public boolean hasRole(String role) {
+        return this.role.equals(role);
+    }
+
+    /**
+     * A detached {@link User} carrying the id, username and role. Enough for
+     * ownership filters and as the target of a new association, but it is not
+     * loaded and must never be saved or merged.
+     */
+    public User toUser() {
+        User user = new User(username, null, role);
+        user.setId(id);
+        user.setEnabled(enabled);
+        return user;
+    }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority(role));
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public boolean isAccountNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isAccountNonLocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isCredentialsNonExpired() {
+        return true;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void eraseCredentials() {
+        password = null;
+    }
+
+    // The session registry keys sessions by principal, so equality follows the username
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AppUserPrincipal other && username.equals(other.username);
+    }
+
+    @Override
+    public int hashCode() {
+        return username.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[id=" + id + ", username=" + username + ", role=" + role + "]";
+    }
+}
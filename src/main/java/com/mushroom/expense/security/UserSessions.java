@@ -0,0 +1,27 @@
+package com.mushroom.expense.security;
+
+import org.springframework.security.core.session.SessionInformation;
+import org.springframework.security.core.session.SessionRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ends the sessions of a user whose account changed, so their next request
+ * goes back through login and picks up a fresh {@link AppUserPrincipal}.
+ */
+@Component
+public class UserSessions {
+
+    private final SessionRegistry sessionRegistry;
+
+    public UserSessions(SessionRegistry sessionRegistry) {
+        this.sessionRegistry = sessionRegistry;
+    }
+
+    public void expireAll(Long userId) {
+        for (Object principal : sessionRegistry.getAllPrincipals()) {
+            if (principal instanceof AppUserPrincipal user && user.getId().equals(userId)) {
+                sessionRegistry.getAllSessions(principal, false).forEach(SessionInformation::expireNow);
+            }
+        }
+    }
+}
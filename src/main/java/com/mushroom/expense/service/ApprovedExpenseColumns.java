@@ -0,0 +1,144 @@
+package com.mushroom.expense.service;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Approved expenses held column by column in primitive arrays, so a group-by
+ * is one tight loop over a few ints and longs per row. Rows are kept dense:
+ * removing one moves the last row into its slot.
+ * <p>
+ * Not thread-safe; {@link ExpenseAnalyticsService} guards access.
+ */
+class ApprovedExpenseColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] epochDays = new int[INITIAL_CAPACITY];
+    private int[] epochWeeks = new int[INITIAL_CAPACITY];
+    private int[] epochMonths = new int[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int[] subCategoryIds = new int[INITIAL_CAPACITY];
+    private byte[] paymentModes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    private final Map<Long, Integer> rowById = new HashMap<>();
+
+    // Bounds of the keys seen so far, used to size the group-by arrays.
+    // They are not lowered on removal, which only over-allocates.
+    private int maxEpochDay = Integer.MIN_VALUE;
+    private int minEpochDay = Integer.MAX_VALUE;
+    private int maxCategoryId;
+    private int maxSubCategoryId;
+
+    int size() {
+        return size;
+    }
+
+    /** Inserts the row, or overwrites it if {@code id} is already present. */
+    void put(long id, int epochDay, int epochWeek, int epochMonth, long amount, int categoryId, int subCategoryId,
+            byte paymentMode) {
+        Integer existing = rowById.get(id);
+        int row;
+        if (existing != null) {
+            row = existing;
+        } else {
+            ensureCapacity(size + 1);
+            row = size++;
+            rowById.put(id, row);
+        }
+        ids[row] = id;
+        epochDays[row] = epochDay;
+        epochWeeks[row] = epochWeek;
+        epochMonths[row] = epochMonth;
+        amounts[row] = amount;
+        categoryIds[row] = categoryId;
+        subCategoryIds[row] = subCategoryId;
+        paymentModes[row] = paymentMode;
+        minEpochDay = Math.min(minEpochDay, epochDay);
+        maxEpochDay = Math.max(maxEpochDay, epochDay);
+        maxCategoryId = Math.max(maxCategoryId, categoryId);
+        maxSubCategoryId = Math.max(maxSubCategoryId, subCategoryId);
+    }
+
+    void remove(long id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return;
+        }
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            epochDays[row] = epochDays[last];
+            epochWeeks[row] = epochWeeks[last];
+            epochMonths[row] = epochMonths[last];
+            amounts[row] = amounts[last];
+            categoryIds[row] = categoryIds[last];
+            subCategoryIds[row] = subCategoryIds[last];
+            paymentModes[row] = paymentModes[last];
+            rowById.put(ids[row], row);
+        }
+    }
+
+    int minEpochDay() {
+        return minEpochDay;
+    }
+
+    int maxEpochDay() {
+        return maxEpochDay;
+    }
+
+    int maxCategoryId() {
+        return maxCategoryId;
+    }
+
+    int maxSubCategoryId() {
+        return maxSubCategoryId;
+    }
+
+    /**
+     * Sums the rows matching the filters into {@code counts} and
+     * {@code totals}, indexed by {@code key - keyOffset} where the key is the
+     * chosen column. A filter of {@code -1} matches everything.
+     */
+    void aggregate(ExpenseAnalyticsService.GroupBy groupBy, int keyOffset, int fromEpochDay, int toEpochDay, int categoryId,
+            int subCategoryId, int paymentMode, long[] counts, long[] totals) {
+        int[] keys = switch (groupBy) {
+            case WEEK -> epochWeeks;
+            case MONTH -> epochMonths;
+            case CATEGORY -> categoryIds;
+            case SUBCATEGORY -> subCategoryIds;
+            case PAYMENT_MODE -> null;
+        };
+        for (int row = 0; row < size; row++) {
+            int day = epochDays[row];
+            if (day < fromEpochDay || day > toEpochDay
+                    || (categoryId >= 0 && categoryIds[row] != categoryId)
+                    || (subCategoryId >= 0 && subCategoryIds[row] != subCategoryId)
+                    || (paymentMode >= 0 && paymentModes[row] != paymentMode)) {
+                continue;
+            }
+            int bucket = (keys != null ? keys[row] : paymentModes[row]) - keyOffset;
+            counts[bucket]++;
+            totals[bucket] += amounts[row];
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int grown = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, grown);
+        epochDays = Arrays.copyOf(epochDays, grown);
+        epochWeeks = Arrays.copyOf(epochWeeks, grown);
+        epochMonths = Arrays.copyOf(epochMonths, grown);
+        amounts = Arrays.copyOf(amounts, grown);
+        categoryIds = Arrays.copyOf(categoryIds, grown);
+        subCategoryIds = Arrays.copyOf(subCategoryIds, grown);
+        paymentModes = Arrays.copyOf(paymentModes, grown);
+    }
+}
@@ -0,0 +1,92 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Moves files stored under the old {@code UUID_originalName} scheme onto
+ * content-addressed blobs, in the background after startup. Each file is
+ * linked to its blob before its rows are renamed, and the old file is deleted
+ * only once the rename commits, so every row always names a file that exists
+ * and an interrupted run simply continues on the next start. Old names are
+ * read a chunk at a time, and names already moved are never read again.
+ */
+@Service
+public class AttachmentBlobMigrator {
+
+    private final FileStorageService fileStorageService;
+    private final ExpenseService expenseService;
+    private final ExpenseAttachmentRepository expenseAttachmentRepository;
+    private final ExpenseRepository expenseRepository;
+    private final boolean enabled;
+    private final int chunkSize;
+
+    public AttachmentBlobMigrator(FileStorageService fileStorageService, ExpenseService expenseService,
+            ExpenseAttachmentRepository expenseAttachmentRepository, ExpenseRepository expenseRepository,
+            @Value("${app.upload.blob-migration.enabled:true}") boolean enabled,
+            @Value("${app.upload.blob-migration.chunk-size:500}") int chunkSize) {
+        this.fileStorageService = fileStorageService;
+        this.expenseService = expenseService;
+        this.expenseAttachmentRepository = expenseAttachmentRepository;
+        this.expenseRepository = expenseRepository;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            Thread thread = new Thread(this::migrateAll, "attachment-blob-migration");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Migrates every file still stored under its old name and returns how many were moved. */
+    public int migrateAll() {
+        // A name shared by an attachment and a receipt image is renamed in both by the first pass
+        return migrateEach(expenseAttachmentRepository::findLegacyFileNamesAfter)
+                + migrateEach(expenseRepository::findLegacyReceiptImagesAfter);
+    }
+
+    private int migrateEach(BiFunction<String, Pageable, List<String>> legacyNamesAfter) {
+        int migrated = 0;
+        String after = "";
+        List<String> chunk;
+        do {
+            chunk = legacyNamesAfter.apply(after, PageRequest.of(0, chunkSize));
+            for (String fileName : chunk) {
+                if (migrate(fileName)) {
+                    migrated++;
+                }
+            }
+            if (!chunk.isEmpty()) {
+                after = chunk.get(chunk.size() - 1);
+            }
+        } while (chunk.size() == chunkSize);
+        return migrated;
+    }
+
+    private boolean migrate(String fileName) {
+        try {
+            expenseService.replaceStoredFile(fileName, fileStorageService.storeExisting(fileName));
+            return true;
+        } catch (NoSuchFileException ex) {
+            System.err.println("Skipping missing attachment file: " + fileName);
+        } catch (IOException | RuntimeException ex) {
+            System.err.println("Failed to migrate attachment file: " + fileName + ". Error: " + ex.getMessage());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,41 @@
+package com.mushroom.expense.service;
+
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Pre-rendered catalog fragments for the HTMX dropdowns. Entries are keyed by
+ * the catalog version they were rendered at, so a catalog change makes every
+ * older entry unreachable; the cache spec ages them out.
+ */
+@Service
+public class CatalogFragmentService {
+
+    public static final String SUB_CATEGORY_OPTIONS_CACHE = "subCategoryOptions";
+
+    private final CategoryService categoryService;
+    private final TemplateEngine templateEngine;
+
+    public CatalogFragmentService(CategoryService categoryService, TemplateEngine templateEngine) {
+        this.categoryService = categoryService;
+        this.templateEngine = templateEngine;
+    }
+
+    /**
+     * The {@code <option>} list for a category as UTF-8 bytes. Callers pass
+     * the {@link CategoryService#getCatalogVersion() catalog version} read
+     * before calling, which is only used as part of the cache key.
+     */
+    @Cacheable(cacheNames = SUB_CATEGORY_OPTIONS_CACHE, key = "#categoryId + ':' + #catalogVersion", sync = true)
+    public byte[] renderSubCategoryOptions(Long categoryId, long catalogVersion) {
+        Context context = new Context();
+        context.setVariable("subCategories", categoryService.findSubCategoriesByCategoryId(categoryId));
+        return templateEngine.process("fragments/subcategory_options", Set.of("options"), context)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -4,27 +4,59 @@ import com.mushroom.expense.entity.Category;
 import com.mushroom.expense.entity.SubCategory;
 import com.mushroom.expense.repository.CategoryRepository;
 import com.mushroom.expense.repository.SubCategoryRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Categories and subcategories. The lists behind every dropdown are cached,
+ * as the catalog rarely changes.
+ * <p>
+ * Cache entries are loaded atomically per key ({@code sync = true}) and
+ * evicted key by key once a write commits. An eviction waits for any load of
+ * the same key still in flight and then drops it, so a load that read the
+ * catalog before the write cannot outlive it.
+ * <p>
+ * {@link #getCatalogVersion()} moves on with every committed change, after
+ * the evictions, so anything keyed by it only ever sees the fresh catalog.
+ */
 @Service
 @Transactional
 public class CategoryService {
 
+    public static final String CATEGORIES_CACHE = "categories";
+    public static final String SUB_CATEGORIES_CACHE = "subCategories";
+
+    private static final String ALL = "all";
+
     private final CategoryRepository categoryRepository;
     private final SubCategoryRepository subCategoryRepository;
+    private final CacheManager cacheManager;
+    // Seeded from the clock so that versions handed out before a restart never match again
+    private final AtomicLong catalogVersion = new AtomicLong(System.currentTimeMillis());
 
-    public CategoryService(CategoryRepository categoryRepository, SubCategoryRepository subCategoryRepository) {
+    public CategoryService(CategoryRepository categoryRepository, SubCategoryRepository subCategoryRepository,
+            CacheManager cacheManager) {
         this.categoryRepository = categoryRepository;
         this.subCategoryRepository = subCategoryRepository;
+        this.cacheManager = cacheManager;
+    }
+
+    public long getCatalogVersion() {
+        return catalogVersion.get();
     }
 
     // Category Methods
+    @Cacheable(cacheNames = CATEGORIES_CACHE, key = "'" + ALL + "'", sync = true)
     public List<Category> findAllCategories() {
-        return categoryRepository.findAll();
+        return List.copyOf(categoryRepository.findAll());
     }
 
     public Optional<Category> findCategoryById(Long id) {
@@ -32,16 +64,20 @@ public class CategoryService {
     }
 
     public Category saveCategory(Category category) {
-        return categoryRepository.save(category);
+        Category saved = categoryRepository.save(category);
+        evictAfterCommit(saved.getId());
+        return saved;
     }
 
     public void deleteCategory(Long id) {
         categoryRepository.deleteById(id);
+        evictAfterCommit(id);
     }
 
     // SubCategory Methods
+    @Cacheable(cacheNames = SUB_CATEGORIES_CACHE, sync = true)
     public List<SubCategory> findSubCategoriesByCategoryId(Long categoryId) {
-        return subCategoryRepository.findByCategoryId(categoryId);
+        return List.copyOf(subCategoryRepository.findByCategoryId(categoryId));
     }
 
     public Optional<SubCategory> findSubCategoryById(Long id) {
@@ -49,10 +85,45 @@ public class CategoryService {
     }
 
     public SubCategory saveSubCategory(SubCategory subCategory) {
-        return subCategoryRepository.save(subCategory);
+        // A subcategory moved to another category leaves the old list too
+        Long previousCategoryId = subCategory.getId() == null ? null
+                : subCategoryRepository.findById(subCategory.getId())
+                        .map(existing -> existing.getCategory().getId()).orElse(null);
+        SubCategory saved = subCategoryRepository.save(subCategory);
+        evictSubCategoriesAfterCommit(previousCategoryId, saved.getCategory().getId());
+        return saved;
     }
 
     public void deleteSubCategory(Long id) {
+        Long categoryId = subCategoryRepository.findById(id)
+                .map(existing -> existing.getCategory().getId()).orElse(null);
         subCategoryRepository.deleteById(id);
+        evictSubCategoriesAfterCommit(categoryId);
+    }
+
+    /** A category's name shows in its subcategory list, so both are evicted. */
+    private void evictAfterCommit(Long categoryId) {
+        TransactionHooks.afterCommit(() -> {
+            cache(CATEGORIES_CACHE).evict(ALL);
+            if (categoryId != null) {
+                cache(SUB_CATEGORIES_CACHE).evict(categoryId);
+            }
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    private void evictSubCategoriesAfterCommit(Long... categoryIds) {
+        TransactionHooks.afterCommit(() -> {
+            for (Long categoryId : categoryIds) {
+                if (categoryId != null) {
+                    cache(SUB_CATEGORIES_CACHE).evict(categoryId);
+                }
+            }
+            catalogVersion.incrementAndGet();
+        });
+    }
+
+    private Cache cache(String name) {
+        return Objects.requireNonNull(cacheManager.getCache(name), name);
     }
 }
@@ -0,0 +1,96 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseSummary;
+import com.mushroom.expense.entity.Expense;
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.ExpenseRepositoryCustom.BucketRow;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@Transactional(readOnly = true)
+public class DashboardService {
+
+    private final ExpenseRepository expenseRepository;
+
+    public DashboardService(ExpenseRepository expenseRepository) {
+        this.expenseRepository = expenseRepository;
+    }
+
+    /**
+     * Loads the requested page and total of every bucket with one windowed
+     * query, then hydrates the listed expenses with a second one. The number of
+     * statements no longer grows with the number of tables on the dashboard.
+     *
+     * @return one page per bucket, keyed by bucket name
+     */
+    public Map<String, Page<Expense>> loadBuckets(User user, List<DashboardBucket> buckets, String keyword,
+            LocalDate startDate, LocalDate endDate, Long categoryId, int pageSize, Sort sort) {
+        return load(user, buckets, keyword, startDate, endDate, categoryId, pageSize, sort,
+                expenseRepository::findAllWithDetailsByIdIn, Expense::getId);
+    }
+
+    /**
+     * Same as {@link #loadBuckets} but hydrates read-only summaries, for tables
+     * that only show the row's headline fields.
+     */
+    public Map<String, Page<ExpenseSummary>> loadBucketSummaries(User user, List<DashboardBucket> buckets,
+            String keyword, LocalDate startDate, LocalDate endDate, Long categoryId, int pageSize, Sort sort) {
+        return load(user, buckets, keyword, startDate, endDate, categoryId, pageSize, sort,
+                expenseRepository::findSummariesByIdIn, ExpenseSummary::id);
+    }
+
+    private <T> Map<String, Page<T>> load(User user, List<DashboardBucket> buckets, String keyword,
+            LocalDate startDate, LocalDate endDate, Long categoryId, int pageSize, Sort sort,
+            Function<Collection<Long>, List<T>> loader, Function<T, Long> idOf) {
+        List<BucketRow> rows = expenseRepository.findBucketRows(user != null ? user.getId() : null, buckets,
+                keyword, startDate, endDate, categoryId, pageSize, sort);
+
+        Map<String, Long> totals = new HashMap<>();
+        Map<String, List<Long>> pageIds = new HashMap<>();
+        Set<Long> ids = new LinkedHashSet<>();
+        Map<String, DashboardBucket> byName = buckets.stream()
+                .collect(Collectors.toMap(DashboardBucket::name, Function.identity()));
+        for (BucketRow row : rows) {
+            totals.put(row.bucket(), row.total());
+            long firstRow = (long) byName.get(row.bucket()).page() * pageSize;
+            if (row.rowNumber() > firstRow && row.rowNumber() <= firstRow + pageSize) {
+                pageIds.computeIfAbsent(row.bucket(), k -> new ArrayList<>()).add(row.expenseId());
+                ids.add(row.expenseId());
+            }
+        }
+
+        Map<Long, T> loaded = ids.isEmpty() ? Map.of()
+                : loader.apply(ids).stream().collect(Collectors.toMap(idOf, Function.identity()));
+
+        Map<String, Page<T>> pages = new LinkedHashMap<>();
+        for (DashboardBucket bucket : buckets) {
+            List<T> content = pageIds.getOrDefault(bucket.name(), List.of()).stream()
+                    .map(loaded::get)
+                    .filter(Objects::nonNull)
+                    .toList();
+            pages.put(bucket.name(), new PageImpl<>(content, PageRequest.of(bucket.page(), pageSize, sort),
+                    totals.getOrDefault(bucket.name(), 0L)));
+        }
+        return pages;
+    }
+}
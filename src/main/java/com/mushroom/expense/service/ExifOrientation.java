@@ -0,0 +1,91 @@
+package com.mushroom.expense.service;
+
+import java.awt.geom.AffineTransform;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The EXIF orientation of a JPEG. Phones store photos as the sensor saw them
+ * and record how to turn them; ImageIO ignores that, so anything re-encoding
+ * a photo has to apply it or the receipt comes out sideways.
+ */
+final class ExifOrientation {
+
+    static final int NORMAL = 1;
+
+    private static final int SOI = 0xFFD8;
+    private static final int SOS = 0xFFDA;
+    private static final int APP1 = 0xFFE1;
+    private static final int ORIENTATION_TAG = 0x0112;
+
+    private ExifOrientation() {
+    }
+
+    /** The orientation, 1 to 8, or {@link #NORMAL} when the file has none or is not a JPEG. */
+    static int read(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readUnsignedShort() != SOI) {
+                return NORMAL;
+            }
+            while (true) {
+                int marker = in.readUnsignedShort();
+                if ((marker & 0xFF00) != 0xFF00 || marker == SOS) {
+                    return NORMAL;
+                }
+                int length = in.readUnsignedShort() - 2;
+                if (marker == APP1) {
+                    return fromExif(in.readNBytes(length));
+                }
+                in.skipNBytes(length);
+            }
+        } catch (IOException | RuntimeException ex) {
+            return NORMAL;
+        }
+    }
+
+    /** Whether the image is turned a quarter, so its width and height swap. */
+    static boolean swapsDimensions(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    /**
+     * Maps an image drawn at {@code width} x {@code height} onto its upright
+     * position, whose size is swapped for quarter turns.
+     */
+    static AffineTransform transform(int orientation, int width, int height) {
+        return switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, width, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, width, height);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, height);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, height, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, height, width);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, width);
+            default -> new AffineTransform();
+        };
+    }
+
+    private static int fromExif(byte[] segment) {
+        if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f') {
+            return NORMAL;
+        }
+        // The TIFF structure after "Exif\0\0", offsets are relative to its start
+        ByteBuffer tiff = ByteBuffer.wrap(segment, 6, segment.length - 6).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifd = tiff.getInt(4);
+        int entries = tiff.getShort(ifd) & 0xFFFF;
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if ((tiff.getShort(entry) & 0xFFFF) == ORIENTATION_TAG) {
+                int orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                return orientation >= 1 && orientation <= 8 ? orientation : NORMAL;
+            }
+        }
+        return NORMAL;
+    }
+}
@@ -0,0 +1,192 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.ExpenseFact;
+import com.mushroom.expense.dto.SpendBucket;
+import com.mushroom.expense.entity.Expense;
+import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.entity.PaymentMode;
+import com.mushroom.expense.money.Money;
+import com.mushroom.expense.repository.ExpenseRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Answers ad-hoc spend questions over approved expenses from memory. The
+ * approved expenses are loaded once at startup into
+ * {@link ApprovedExpenseColumns}, then kept current as expenses are approved,
+ * sent back or deleted. Changes are applied after their transaction commits,
+ * so a rolled-back approval never shows up.
+ */
+@Service
+public class ExpenseAnalyticsService {
+
+    public enum GroupBy {
+        WEEK, MONTH, CATEGORY, SUBCATEGORY, PAYMENT_MODE
+    }
+
+    private static final PaymentMode[] PAYMENT_MODES = PaymentMode.values();
+
+    private final ExpenseRepository expenseRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ApprovedExpenseColumns columns = new ApprovedExpenseColumns();
+
+    public ExpenseAnalyticsService(ExpenseRepository expenseRepository) {
+        this.expenseRepository = expenseRepository;
+    }
+
+    /** Replaces the cached columns with the approved expenses in the database. */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void load() {
+        ApprovedExpenseColumns loaded = new ApprovedExpenseColumns();
+        // Changes committed meanwhile wait for the lock and are re-applied on
+        // top, which is harmless as put and remove are idempotent
+        lock.writeLock().lock();
+        try (Stream<ExpenseFact> facts = expenseRepository.streamFactsByStatus(ExpenseStatus.APPROVED)) {
+            facts.forEach(fact -> put(loaded, fact));
+            columns = loaded;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Records a created or modified expense once the current transaction commits. */
+    public void recordChange(Expense expense) {
+        Long id = expense.getId();
+        ExpenseFact fact = expense.getStatus() == ExpenseStatus.APPROVED
+                ? new ExpenseFact(id, expense.getDate(), expense.getAmount(),
+                        expense.getCategory() != null ? expense.getCategory().getId() : null,
+                        expense.getSubCategory() != null ? expense.getSubCategory().getId() : null,
+                        expense.getPaymentMode())
+                : null;
+        TransactionHooks.afterCommit(() -> apply(id, fact));
+    }
+
+    /** Records a deleted expense once the current transaction commits. */
+    public void recordRemoval(Long expenseId) {
+        TransactionHooks.afterCommit(() -> apply(expenseId, null));
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return columns.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Approved spend between {@code startDate} and {@code endDate}
+     * (inclusive, either may be null) grouped by {@code groupBy}, optionally
+     * narrowed to a category, subcategory or payment mode. Empty groups are
+     * left out.
+     */
+    public List<SpendBucket> spend(GroupBy groupBy, LocalDate startDate, LocalDate endDate, Long categoryId,
+            Long subCategoryId, PaymentMode paymentMode) {
+        int keyOffset;
+        long[] counts;
+        long[] totals;
+        lock.readLock().lock();
+        try {
+            if (columns.size() == 0) {
+                return List.of();
+            }
+            int fromDay = Math.max(columns.minEpochDay(),
+                    startDate != null ? clampToInt(startDate.toEpochDay()) : Integer.MIN_VALUE);
+            int toDay = Math.min(columns.maxEpochDay(),
+                    endDate != null ? clampToInt(endDate.toEpochDay()) : Integer.MAX_VALUE);
+            if (fromDay > toDay) {
+                return List.of();
+            }
+            int lastKey = switch (groupBy) {
+                case WEEK -> epochWeek(toDay);
+                case MONTH -> epochMonth(toDay);
+                case CATEGORY -> columns.maxCategoryId();
+                case SUBCATEGORY -> columns.maxSubCategoryId();
+                case PAYMENT_MODE -> PAYMENT_MODES.length - 1;
+            };
+            keyOffset = switch (groupBy) {
+                case WEEK -> epochWeek(fromDay);
+                case MONTH -> epochMonth(fromDay);
+                default -> 0;
+            };
+            counts = new long[lastKey - keyOffset + 1];
+            totals = new long[counts.length];
+            columns.aggregate(groupBy, keyOffset, fromDay, toDay, filter(categoryId), filter(subCategoryId),
+                    paymentMode != null ? paymentMode.ordinal() : -1, counts, totals);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<SpendBucket> buckets = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                buckets.add(new SpendBucket(keyLabel(groupBy, i + keyOffset), counts[i],
+                        Money.toDecimal(totals[i])));
+            }
+        }
+        return buckets;
+    }
+
+    private void apply(Long id, ExpenseFact fact) {
+        lock.writeLock().lock();
+        try {
+            if (fact == null || !put(columns, fact)) {
+                columns.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Adds the fact, returning false if it lacks a column the cache needs. */
+    private static boolean put(ApprovedExpenseColumns target, ExpenseFact fact) {
+        if (fact.id() == null || fact.date() == null || fact.categoryId() == null
+                || fact.subCategoryId() == null || fact.paymentMode() == null) {
+            return false;
+        }
+        int epochDay = Math.toIntExact(fact.date().toEpochDay());
+        target.put(fact.id(), epochDay, epochWeek(epochDay), epochMonth(epochDay), fact.amount(),
+                Math.toIntExact(fact.categoryId()), Math.toIntExact(fact.subCategoryId()),
+                (byte) fact.paymentMode().ordinal());
+        return true;
+    }
+
+    // Weeks start on Monday; epoch day 0 was a Thursday
+    private static int epochWeek(int epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    private static int epochMonth(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static String keyLabel(GroupBy groupBy, int key) {
+        return switch (groupBy) {
+            case WEEK -> LocalDate.ofEpochDay(key * 7L - 3).toString();
+            case MONTH -> YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1).toString();
+            case CATEGORY, SUBCATEGORY -> Integer.toString(key);
+            case PAYMENT_MODE -> PAYMENT_MODES[key].name();
+        };
+    }
+
+    private static int filter(Long id) {
+        return id != null ? clampToInt(id) : -1;
+    }
+
+    private static int clampToInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+}
@@ -0,0 +1,116 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.ExpenseExportRow;
+import com.mushroom.expense.entity.Expense;
+import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.money.Money;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.specification.ExpenseSearch;
+import com.mushroom.expense.specification.ExpenseSpecification;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+@Service
+@Transactional(readOnly = true)
+public class ExpenseExportService {
+
+    public static final String CSV_HEADER = "ID,Date,Category,SubCategory,Amount,Status,Description,User";
+
+    static final int FETCH_SIZE = 500;
+    static final int FLUSH_EVERY = 1000;
+
+    private final ExpenseRepository expenseRepository;
+
+    public ExpenseExportService(ExpenseRepository expenseRepository) {
+        this.expenseRepository = expenseRepository;
+    }
+
+    /**
+     * Writes the expenses {@code requester} may export: managers get their own
+     * in any status, accountants and supervisors everyone's submitted, approved
+     * and rejected ones. Other roles get just the header.
+     */
+    public long writeCsvFor(User requester, String keyword, LocalDate startDate, LocalDate endDate, Long categoryId,
+            Sort sort, Writer writer, LongConsumer progress) throws IOException {
+        String role = requester.getRole();
+        if (role.equals("ROLE_MANAGER")) {
+            return writeCsv(requester, List.of(ExpenseStatus.values()), keyword, startDate, endDate, categoryId, sort,
+                    writer, progress);
+        } else if (role.equals("ROLE_ACCOUNTANT") || role.equals("ROLE_SUPERVISOR")) {
+            return writeCsv(null, List.of(ExpenseStatus.SUBMITTED, ExpenseStatus.APPROVED, ExpenseStatus.REJECTED),
+                    keyword, startDate, endDate, categoryId, sort, writer, progress);
+        }
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        writer.flush();
+        return 0;
+    }
+
+    public long writeCsv(User user, List<ExpenseStatus> statuses, String keyword, LocalDate startDate,
+            LocalDate endDate, Long categoryId, Sort sort, Writer writer) throws IOException {
+        return writeCsv(user, statuses, keyword, startDate, endDate, categoryId, sort, writer, rows -> {
+        });
+    }
+
+    /**
+     * Writes the matching expenses as CSV while they are read from a database
+     * cursor, flushing as it goes, so memory stays flat however many rows are
+     * exported.
+     *
+     * {@code progress} receives the running row count at every flush.
+     *
+     * @return the number of rows written, excluding the header
+     */
+    public long writeCsv(User user, List<ExpenseStatus> statuses, String keyword, LocalDate startDate,
+            LocalDate endDate, Long categoryId, Sort sort, Writer writer, LongConsumer progress) throws IOException {
+        Specification<Expense> spec = ExpenseSpecification.filterExpenses(user, statuses, keyword, startDate, endDate,
+                categoryId);
+        if (sort.getOrderFor(ExpenseSearch.SORT_FIELD) != null) {
+            spec = spec.and(ExpenseSpecification.orderByRelevance(keyword));
+            sort = ExpenseSearch.hasKeyword(keyword) ? Sort.unsorted() : Sort.by("date").descending();
+        }
+
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        long count = 0;
+        StringBuilder line = new StringBuilder(128);
+        try (Stream<ExpenseExportRow> rows = expenseRepository.streamExportRows(spec, sort, FETCH_SIZE)) {
+            Iterator<ExpenseExportRow> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                line.setLength(0);
+                appendRow(line, iterator.next());
+                writer.append(line);
+                if (++count % FLUSH_EVERY == 0) {
+                    writer.flush();
+                    progress.accept(count);
+                }
+            }
+        }
+        writer.flush();
+        progress.accept(count);
+        return count;
+    }
+
+    static void appendRow(StringBuilder line, ExpenseExportRow row) {
+        line.append(row.id()).append(',')
+                .append(row.date()).append(',')
+                .append(row.categoryName()).append(',')
+                .append(row.subCategoryName()).append(',');
+        Money.appendTo(line, row.amount()).append(',')
+                .append(row.status()).append(',')
+                .append('"').append(row.description() != null ? row.description().replace("\"", "\"\"") : "")
+                .append('"').append(',')
+                .append(row.username()).append('\n');
+    }
+}
@@ -0,0 +1,73 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.CategorySpend;
+import com.mushroom.expense.entity.Expense;
+import com.mushroom.expense.entity.ExpenseRollup.Contribution;
+import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.repository.ExpenseRollupRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keeps the expense rollups in step with the expenses table. Every change is
+ * applied as a delta in the same transaction as the change itself: the
+ * expense's previously recorded contribution is taken out and its current one
+ * put in.
+ */
+@Service
+@Transactional
+public class ExpenseRollupService {
+
+    private final ExpenseRollupRepository expenseRollupRepository;
+
+    public ExpenseRollupService(ExpenseRollupRepository expenseRollupRepository) {
+        this.expenseRollupRepository = expenseRollupRepository;
+    }
+
+    /** Records a created or modified expense. */
+    public void recordChange(Expense expense) {
+        Contribution before = expense.recordedContribution();
+        Contribution after = Contribution.of(expense);
+        if (Objects.equals(before, after)) {
+            return;
+        }
+        if (before != null && after != null && before.key().equals(after.key())) {
+            expenseRollupRepository.applyDelta(after.key(), 0, after.amount() - before.amount(),
+                    after.tax() - before.tax());
+        } else {
+            if (before != null) {
+                expenseRollupRepository.applyDelta(before.key(), -1, -before.amount(), -before.tax());
+            }
+            if (after != null) {
+                expenseRollupRepository.applyDelta(after.key(), 1, after.amount(), after.tax());
+            }
+        }
+        expense.markContributionRecorded(after);
+    }
+
+    /** Records an expense that is about to be deleted. */
+    public void recordRemoval(Expense expense) {
+        Contribution before = expense.recordedContribution();
+        if (before != null) {
+            expenseRollupRepository.applyDelta(before.key(), -1, -before.amount(), -before.tax());
+            expense.markContributionRecorded(null);
+        }
+    }
+
+    /**
+     * Recomputes all rollups from the expenses table, e.g. after data was
+     * changed outside the application. Best run while nobody is editing.
+     */
+    public void rebuild() {
+        expenseRollupRepository.rebuild();
+    }
+
+    @Transactional(readOnly = true)
+    public List<CategorySpend> getSpendByCategory(YearMonth from, YearMonth to, List<ExpenseStatus> statuses) {
+        return expenseRollupRepository.findSpendByCategory(from.atDay(1), to.atDay(1), statuses);
+    }
+}
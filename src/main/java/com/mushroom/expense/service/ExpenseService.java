@@ -1,22 +1,43 @@
 package com.mushroom.expense.service;
 
+import com.mushroom.expense.entity.Category;
 import com.mushroom.expense.entity.Expense;
 import com.mushroom.expense.entity.ExpenseComment;
 import com.mushroom.expense.entity.ExpenseStatus;
 import com.mushroom.expense.entity.User;
 import com.mushroom.expense.repository.ExpenseCommentRepository;
 import com.mushroom.expense.repository.ExpenseRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import com.mushroom.expense.dto.CursorPage;
+import com.mushroom.expense.dto.ExpenseCursor;
+import com.mushroom.expense.dto.ExpenseRevision;
+import org.springframework.data.domain.KeysetScrollPosition;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 
 @Service
 @Transactional
@@ -26,14 +47,44 @@ public class ExpenseService {
     private final ExpenseCommentRepository expenseCommentRepository;
     private final com.mushroom.expense.repository.ExpenseAttachmentRepository expenseAttachmentRepository;
     private final FileStorageService fileStorageService;
+    private final ThumbnailService thumbnailService;
+    private final FileDeletionService fileDeletionService;
+    private final ExpenseRollupService expenseRollupService;
+    private final ExpenseAnalyticsService expenseAnalyticsService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final Map<ExpenseStatus, AtomicLong> dataVersions = new EnumMap<>(ExpenseStatus.class);
 
     public ExpenseService(ExpenseRepository expenseRepository, ExpenseCommentRepository expenseCommentRepository,
             com.mushroom.expense.repository.ExpenseAttachmentRepository expenseAttachmentRepository,
-            FileStorageService fileStorageService) {
+            FileStorageService fileStorageService, ThumbnailService thumbnailService,
+            FileDeletionService fileDeletionService, ExpenseRollupService expenseRollupService,
+            ExpenseAnalyticsService expenseAnalyticsService, PlatformTransactionManager transactionManager) {
         this.expenseRepository = expenseRepository;
         this.expenseCommentRepository = expenseCommentRepository;
         this.expenseAttachmentRepository = expenseAttachmentRepository;
         this.fileStorageService = fileStorageService;
+        this.thumbnailService = thumbnailService;
+        this.fileDeletionService = fileDeletionService;
+        this.expenseRollupService = expenseRollupService;
+        this.expenseAnalyticsService = expenseAnalyticsService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Seeded from the clock so that versions handed out before a restart never match again
+        long seed = System.currentTimeMillis();
+        for (ExpenseStatus status : ExpenseStatus.values()) {
+            dataVersions.put(status, new AtomicLong(seed));
+        }
+    }
+
+    /**
+     * Moves on after every committed change to an expense in {@code status},
+     * whether it entered, left or changed while in it. Anything rendered from
+     * the expenses in a status can be keyed by this version.
+     */
+    public long getDataVersion(ExpenseStatus status) {
+        return dataVersions.get(status).get();
     }
 
     public List<Expense> findAllExpenses() {
@@ -72,15 +123,180 @@ public class ExpenseService {
             LocalDate startDate, LocalDate endDate, Long categoryId, Pageable pageable) {
         org.springframework.data.jpa.domain.Specification<Expense> spec = com.mushroom.expense.specification.ExpenseSpecification
                 .filterExpenses(user, statuses, keyword, startDate, endDate, categoryId);
+        if (pageable.getSort().getOrderFor(com.mushroom.expense.specification.ExpenseSearch.SORT_FIELD) != null) {
+            // Relevance is not a mapped attribute; the specification orders by rank instead
+            spec = spec.and(com.mushroom.expense.specification.ExpenseSpecification.orderByRelevance(keyword));
+            pageable = PageRequest.of(pageable.getPageNumber(), pageable.getPageSize());
+        }
         return expenseRepository.findAll(spec, pageable);
     }
 
+    /**
+     * Cursor-paged variant of {@link #getExpenses(User, List, String, LocalDate, LocalDate, Long, Pageable)}.
+     * Seeks from the position encoded in {@code cursor} instead of skipping an
+     * offset, so every slice costs the same regardless of depth. Only the
+     * {@code date} and {@code amount} sort fields are supported.
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<Expense> getExpenses(User user, List<ExpenseStatus> statuses, String keyword,
+            LocalDate startDate, LocalDate endDate, Long categoryId, String cursor, int size, Sort sort) {
+        org.springframework.data.jpa.domain.Specification<Expense> spec = com.mushroom.expense.specification.ExpenseSpecification
+                .filterExpenses(user, statuses, keyword, startDate, endDate, categoryId);
+        ExpenseCursor position = cursor != null && !cursor.isEmpty() ? ExpenseCursor.decode(cursor, sort) : null;
+        KeysetScrollPosition scrollPosition = position != null ? position.toScrollPosition() : ScrollPosition.keyset();
+
+        Window<Expense> window = expenseRepository.findBy(spec,
+                query -> query.sortBy(ExpenseCursor.keysetSort(sort)).limit(size)
+                        .project("category", "subCategory", "user")
+                        .scroll(scrollPosition));
+        List<Expense> content = window.getContent();
+        if (content.isEmpty()) {
+            return new CursorPage<>(content, null, null);
+        }
+
+        // Window.hasNext() reports more rows in the direction that was scrolled;
+        // the opposite direction is where the cursor came from.
+        boolean forward = position == null || position.forward();
+        boolean moreAfter = forward ? window.hasNext() : true;
+        boolean moreBefore = forward ? position != null : window.hasNext();
+        String next = moreAfter ? ExpenseCursor.after(content.get(content.size() - 1), sort).encode() : null;
+        String previous = moreBefore ? ExpenseCursor.before(content.get(0), sort).encode() : null;
+        return new CursorPage<>(content, next, previous);
+    }
+
     public Optional<Expense> findById(Long id) {
         return expenseRepository.findById(id);
     }
 
+    /** The version and comment count of an expense, without loading it. */
+    @Transactional(readOnly = true)
+    public Optional<ExpenseRevision> findRevision(Long id) {
+        return expenseRepository.findRevisionById(id);
+    }
+
+    /**
+     * Whether {@code requester} may see the stored file {@code fileName}:
+     * it must belong to one of their own expenses or, for accountants and
+     * supervisors, to one that has been submitted to them, including those
+     * they raised queries on. The same file may be shared by several
+     * expenses, any one of them will do.
+     */
+    @Transactional(readOnly = true)
+    public boolean canViewFile(String fileName, User requester) {
+        String role = requester.getRole();
+        Set<ExpenseStatus> reviewed = role.equals("ROLE_ACCOUNTANT") || role.equals("ROLE_SUPERVISOR")
+                ? EnumSet.of(ExpenseStatus.SUBMITTED, ExpenseStatus.QUERIES_RAISED, ExpenseStatus.APPROVED,
+                        ExpenseStatus.REJECTED)
+                : EnumSet.noneOf(ExpenseStatus.class);
+        return expenseRepository.existsVisibleReference(fileName, requester.getId(), reviewed);
+    }
+
+    @Transactional(propagation = Propagation.SUPPORTS)
     public Expense saveExpense(Expense expense, List<MultipartFile> files, List<Long> deleteAttachmentIds,
             boolean deletePrimaryImage) throws IOException {
+        return saveExpense(expense, files, deleteAttachmentIds, deletePrimaryImage, null);
+    }
+
+    /**
+     * Saves {@code expense}. When editing, {@code expectedVersion} is the
+     * version the form was rendered at; if the expense has moved on since,
+     * nothing is changed and an {@link ObjectOptimisticLockingFailureException}
+     * is thrown. {@code null} skips the check.
+     * <p>
+     * New files are stored before the transaction opens, so it only holds a
+     * connection for the rows. Should it fail, they are handed to the
+     * {@link FileDeletionService}, which deletes whichever nothing else
+     * shares; if even that fails, the {@link OrphanFileCollector} picks them
+     * up later.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Expense saveExpense(Expense expense, List<MultipartFile> files, List<Long> deleteAttachmentIds,
+            boolean deletePrimaryImage, Long expectedVersion) throws IOException {
+        return storeAndPersist(expense.getCategory(), files, storedFiles -> persistExpense(expense, storedFiles,
+                deleteAttachmentIds, deletePrimaryImage, expectedVersion));
+    }
+
+    /**
+     * Saves the expense form submitted by {@code owner}: a new expense, or
+     * the fields of an existing one copied onto it at the version the form
+     * was rendered at. The existing expense is only loaded once the files are
+     * stored, in the same transaction as the save, so nothing before the
+     * uploads needs a connection.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Expense saveExpenseForm(Expense form, User owner, List<MultipartFile> files, List<Long> deleteAttachmentIds,
+            boolean deletePrimaryImage) throws IOException {
+        return storeAndPersist(form.getCategory(), files, storedFiles -> {
+            Expense expense;
+            if (form.getId() != null) {
+                expense = expenseRepository.findById(form.getId())
+                        .orElseThrow(() -> new IllegalArgumentException("Invalid expense Id:" + form.getId()));
+                requireVersion(expense, form.getVersion());
+                expense.setCategory(form.getCategory());
+                expense.setSubCategory(form.getSubCategory());
+                expense.setDescription(form.getDescription());
+                expense.setAmount(form.getAmount());
+                expense.setDate(form.getDate());
+                expense.setPaymentMode(form.getPaymentMode());
+                expense.setTaxBasisPoints(form.getTaxBasisPoints());
+                expense.setBatchId(form.getBatchId());
+                // A rejected expense goes back to DRAFT so it can be resubmitted
+                if (expense.getStatus() == ExpenseStatus.REJECTED) {
+                    expense.setStatus(ExpenseStatus.DRAFT);
+                }
+            } else {
+                expense = form;
+                expense.setUser(owner);
+                expense.setStatus(ExpenseStatus.DRAFT);
+            }
+            return persistExpense(expense, storedFiles, deleteAttachmentIds, deletePrimaryImage, null);
+        });
+    }
+
+    private Expense storeAndPersist(Category category, List<MultipartFile> files,
+            Function<List<String>, Expense> persist) throws IOException {
+        List<MultipartFile> uploads = files == null ? List.of()
+                : files.stream().filter(file -> !file.isEmpty()).toList();
+        boolean keepOriginals = category != null && category.isKeepOriginalReceipts();
+        List<String> storedFiles = uploads.isEmpty() ? List.of()
+                : fileStorageService.storeFiles(uploads, keepOriginals);
+        try {
+            return transactionTemplate.execute(status -> persist.apply(storedFiles));
+        } catch (RuntimeException | Error ex) {
+            discardStoredFiles(storedFiles);
+            throw ex;
+        }
+    }
+
+    private void discardStoredFiles(List<String> storedFiles) {
+        if (storedFiles.isEmpty()) {
+            return;
+        }
+        try {
+            // In a transaction of its own, the one that failed may only be able to roll back
+            newTransactionTemplate.executeWithoutResult(status -> fileDeletionService.scheduleDeletion(storedFiles));
+        } catch (RuntimeException ex) {
+            // Not deleted here: another expense may have stored the same bytes meanwhile, and only the
+            // deletion worker checks references. The OrphanFileCollector is the backstop for these
+            // files, it quarantines them once they are older than its grace period.
+            System.err.println("Failed to discard stored files, leaving them to the orphan collector: "
+                    + storedFiles + ". Error: " + ex.getMessage());
+        }
+    }
+
+    private Expense persistExpense(Expense expense, List<String> storedFiles, List<Long> deleteAttachmentIds,
+            boolean deletePrimaryImage, Long expectedVersion) {
+        boolean editing = expense.getId() != null;
+        // Checked before anything is changed
+        if (editing && expectedVersion != null) {
+            requireVersion(expenseRepository.findById(expense.getId())
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid expense Id:" + expense.getId())),
+                    expectedVersion);
+        }
+        // An edit arrives detached, so the status it is leaving is not known here
+        Set<ExpenseStatus> touched = editing ? EnumSet.allOf(ExpenseStatus.class) : EnumSet.of(expense.getStatus());
+        boolean attachmentsChanged = false;
+        List<String> releasedFiles = new java.util.ArrayList<>();
         if (expense.getDate() == null) {
             expense.setDate(LocalDate.now());
         }
@@ -92,7 +308,7 @@ public class ExpenseService {
 
         // Handle deletions
         if (deletePrimaryImage && expense.getReceiptImage() != null) {
-            fileStorageService.deleteFile(expense.getReceiptImage());
+            releasedFiles.add(expense.getReceiptImage());
             expense.setReceiptImage(null);
         }
 
@@ -100,12 +316,12 @@ public class ExpenseService {
             List<com.mushroom.expense.entity.ExpenseAttachment> attachmentsToRemove = new java.util.ArrayList<>();
             for (com.mushroom.expense.entity.ExpenseAttachment attachment : expense.getAttachments()) {
                 if (deleteAttachmentIds.contains(attachment.getId())) {
-                    fileStorageService.deleteFile(attachment.getFileName());
+                    releasedFiles.add(attachment.getFileName());
                     expenseAttachmentRepository.delete(attachment); // Explicit delete
                     attachmentsToRemove.add(attachment);
                 }
             }
-            expense.getAttachments().removeAll(attachmentsToRemove);
+            attachmentsChanged = expense.getAttachments().removeAll(attachmentsToRemove);
         }
 
         // Migration: Move legacy receiptImage to attachments if present
@@ -121,43 +337,95 @@ public class ExpenseService {
             expense.setReceiptImage(null); // Clear legacy field
         }
 
-        if (files != null && !files.isEmpty()) {
-            for (MultipartFile file : files) {
-                if (!file.isEmpty()) {
-                    String fileName = fileStorageService.storeFile(file);
-
-                    com.mushroom.expense.entity.ExpenseAttachment attachment = new com.mushroom.expense.entity.ExpenseAttachment(
-                            fileName, expense);
-                    // Add to the list so cascade/orphanRemoval works correctly
-                    expense.getAttachments().add(attachment);
-                }
-            }
+        for (String fileName : storedFiles) {
+            com.mushroom.expense.entity.ExpenseAttachment attachment = new com.mushroom.expense.entity.ExpenseAttachment(
+                    fileName, expense);
+            // Add to the list so cascade/orphanRemoval works correctly
+            expense.getAttachments().add(attachment);
+            attachmentsChanged = true;
         }
 
-        return expenseRepository.save(expense);
+        Expense saved = expenseRepository.save(expense);
+        // The attachments are not columns of the expense, so saving alone leaves the version as it was
+        if (editing && attachmentsChanged) {
+            expenseRepository.incrementVersion(saved);
+        }
+        releaseFiles(releasedFiles);
+        if (!storedFiles.isEmpty()) {
+            TransactionHooks.afterCommit(() -> thumbnailService.generateLater(storedFiles));
+        }
+        expenseRollupService.recordChange(saved);
+        expenseAnalyticsService.recordChange(saved);
+        bumpDataVersions(touched);
+        return saved;
     }
 
     public Expense updateExpenseStatus(Long expenseId, ExpenseStatus status) {
+        return updateExpenseStatus(expenseId, status, null);
+    }
+
+    /**
+     * Moves the expense to {@code status}, provided it is still at
+     * {@code expectedVersion}, the version the caller's page showed. Two
+     * reviewers acting on the same page cannot overwrite each other: the
+     * second gets an {@link ObjectOptimisticLockingFailureException}.
+     * {@code null} skips the check.
+     */
+    public Expense updateExpenseStatus(Long expenseId, ExpenseStatus status, Long expectedVersion) {
         Expense expense = expenseRepository.findById(expenseId)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid expense Id:" + expenseId));
+        requireVersion(expense, expectedVersion);
+        bumpDataVersions(EnumSet.of(expense.getStatus(), status));
         expense.setStatus(status);
-        return expenseRepository.save(expense);
+        Expense saved = expenseRepository.save(expense);
+        expenseRollupService.recordChange(saved);
+        expenseAnalyticsService.recordChange(saved);
+        return saved;
     }
 
     public void addComment(Long expenseId, User user, String message) {
+        addComment(expenseId, user, message, null);
+    }
+
+    /** Adds a comment, with the same version check as {@link #updateExpenseStatus(Long, ExpenseStatus, Long)}. */
+    public void addComment(Long expenseId, User user, String message, Long expectedVersion) {
         Expense expense = expenseRepository.findById(expenseId)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid expense Id:" + expenseId));
+        requireVersion(expense, expectedVersion);
 
         ExpenseComment comment = new ExpenseComment(expense, user, message);
         expenseCommentRepository.save(comment);
 
         // Auto-update status to QUERIES_RAISED if not already
         if (expense.getStatus() != ExpenseStatus.QUERIES_RAISED) {
+            bumpDataVersions(EnumSet.of(expense.getStatus(), ExpenseStatus.QUERIES_RAISED));
             expense.setStatus(ExpenseStatus.QUERIES_RAISED);
-            expenseRepository.save(expense);
+            Expense saved = expenseRepository.save(expense);
+            expenseRollupService.recordChange(saved);
+            expenseAnalyticsService.recordChange(saved);
         }
     }
 
+    /**
+     * Rejects the expense with {@code message} as the reason. The comment and
+     * the status change are written in one transaction, after one check of
+     * {@code expectedVersion}, so a change made in between cannot be
+     * overwritten by the rejection.
+     */
+    public Expense rejectWithComment(Long expenseId, User user, String message, Long expectedVersion) {
+        Expense expense = expenseRepository.findById(expenseId)
+                .orElseThrow(() -> new IllegalArgumentException("Invalid expense Id:" + expenseId));
+        requireVersion(expense, expectedVersion);
+
+        expenseCommentRepository.save(new ExpenseComment(expense, user, message));
+        bumpDataVersions(EnumSet.of(expense.getStatus(), ExpenseStatus.REJECTED));
+        expense.setStatus(ExpenseStatus.REJECTED);
+        Expense saved = expenseRepository.save(expense);
+        expenseRollupService.recordChange(saved);
+        expenseAnalyticsService.recordChange(saved);
+        return saved;
+    }
+
     public List<ExpenseComment> getComments(Long expenseId) {
         return expenseCommentRepository.findByExpenseId(expenseId);
     }
@@ -167,19 +435,22 @@ public class ExpenseService {
         if (expenseOptional.isPresent()) {
             Expense expense = expenseOptional.get();
 
-            // Delete primary receipt image
+            // Primary receipt image and all attachments
+            List<String> releasedFiles = new java.util.ArrayList<>();
             if (expense.getReceiptImage() != null) {
-                fileStorageService.deleteFile(expense.getReceiptImage());
+                releasedFiles.add(expense.getReceiptImage());
             }
-
-            // Delete all attachments
             if (expense.getAttachments() != null) {
                 for (com.mushroom.expense.entity.ExpenseAttachment attachment : expense.getAttachments()) {
-                    fileStorageService.deleteFile(attachment.getFileName());
+                    releasedFiles.add(attachment.getFileName());
                 }
             }
 
+            expenseRollupService.recordRemoval(expense);
+            expenseAnalyticsService.recordRemoval(id);
             expenseRepository.deleteById(id);
+            releaseFiles(releasedFiles);
+            bumpDataVersions(EnumSet.of(expense.getStatus()));
         }
     }
 
@@ -189,20 +460,55 @@ public class ExpenseService {
         if (attachmentOptional.isPresent()) {
             com.mushroom.expense.entity.ExpenseAttachment attachment = attachmentOptional.get();
 
-            // Delete file from storage
-            fileStorageService.deleteFile(attachment.getFileName());
-
             // Remove from parent expense to ensure consistency if expense is loaded in
             // session
             Expense expense = attachment.getExpense();
             if (expense != null && expense.getAttachments() != null) {
                 expense.getAttachments().remove(attachment);
                 expenseRepository.save(expense); // Save expense to update the collection
+                expenseRepository.incrementVersion(expense);
+                bumpDataVersions(EnumSet.of(expense.getStatus()));
             } else {
                 // Fallback direct delete if no parent link (shouldn't happen with correct
                 // mapping)
                 expenseAttachmentRepository.delete(attachment);
             }
+            releaseFiles(List.of(attachment.getFileName()));
+        }
+    }
+
+    /**
+     * Points every attachment and receipt image stored as {@code oldName} at
+     * {@code newName}, which must hold the same bytes, and has the old file
+     * deleted once that commits. The expenses move to a new version, so an edit
+     * form still carrying the old name is refused rather than restoring it.
+     */
+    public void replaceStoredFile(String oldName, String newName) {
+        expenseRepository.incrementVersionsByAttachment(oldName);
+        expenseAttachmentRepository.renameFile(oldName, newName);
+        expenseRepository.renameReceiptImage(oldName, newName);
+        bumpDataVersions(EnumSet.allOf(ExpenseStatus.class));
+        fileDeletionService.scheduleDeletion(List.of(oldName));
+    }
+
+    /**
+     * Hands {@code fileNames} to the {@link FileDeletionService}, which
+     * deletes those that no attachment or receipt image refers to any more
+     * once this transaction commits. Stored files are content-addressed and
+     * shared, so removing a reference must not take the file from under the
+     * others.
+     */
+    private void releaseFiles(Collection<String> fileNames) {
+        fileDeletionService.scheduleDeletion(fileNames);
+    }
+
+    private static void requireVersion(Expense expense, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(expense.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Expense.class, expense.getId());
         }
     }
+
+    private void bumpDataVersions(Set<ExpenseStatus> statuses) {
+        TransactionHooks.afterCommit(() -> statuses.forEach(status -> dataVersions.get(status).incrementAndGet()));
+    }
 }
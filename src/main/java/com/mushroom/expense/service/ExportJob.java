@@ -0,0 +1,87 @@
+package com.mushroom.expense.service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A background CSV export. Progress fields are written by the worker thread
+ * and read by status requests, hence volatile.
+ */
+public class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String username;
+    private final boolean gzip;
+    private final Instant createdAt = Instant.now();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private volatile Status status = Status.QUEUED;
+    private volatile Path file;
+    private volatile String errorMessage;
+
+    public ExportJob(String id, String username, boolean gzip) {
+        this.id = id;
+        this.username = username;
+        this.gzip = gzip;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.get();
+    }
+
+    public void setRowsWritten(long rows) {
+        rowsWritten.set(rows);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public void setFile(Path file) {
+        this.file = file;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public String getDownloadName() {
+        return gzip ? "expenses.csv.gz" : "expenses.csv";
+    }
+}
@@ -0,0 +1,198 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.User;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Runs CSV exports on a small bounded worker pool so they never hold a request
+ * thread. Finished files are written under {@code exports/} in the upload area
+ * and kept for a limited time, after which a background sweep deletes them
+ * along with their jobs; job state lives in memory only.
+ */
+@Service
+public class ExportJobService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ExpenseExportService expenseExportService;
+    private final Path exportLocation;
+    private final Duration retention;
+    private final Duration purgeInterval;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService purger;
+
+    public ExportJobService(ExpenseExportService expenseExportService,
+            @Value("${app.upload.dir}") String uploadDir,
+            @Value("${app.export.workers:2}") int workers,
+            @Value("${app.export.queue-capacity:20}") int queueCapacity,
+            @Value("${app.export.retention:PT24H}") Duration retention,
+            @Value("${app.export.purge-interval:PT1H}") Duration purgeInterval) {
+        this.expenseExportService = expenseExportService;
+        this.exportLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve("exports");
+        this.retention = retention;
+        this.purgeInterval = purgeInterval;
+        try {
+            Files.createDirectories(this.exportLocation);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where exports will be stored.", ex);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "export-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "export-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(this::purgeQuietly, purgeInterval.toMillis(), purgeInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues an export of what {@code requester} may see with the given filters
+     * and returns immediately. When the queue is full the job is returned
+     * already failed rather than blocking the caller.
+     */
+    public ExportJob submit(User requester, String keyword, LocalDate startDate, LocalDate endDate, Long categoryId,
+            Sort sort, boolean gzip) {
+        purgeExpired();
+        ExportJob job = new ExportJob(UUID.randomUUID().toString(), requester.getUsername(), gzip);
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job, requester, keyword, startDate, endDate, categoryId, sort));
+        } catch (RejectedExecutionException ex) {
+            job.setErrorMessage("Too many exports are running, please try again shortly.");
+            job.setStatus(ExportJob.Status.FAILED);
+        }
+        return job;
+    }
+
+    /** The job with this id, if it exists and belongs to {@code username}. */
+    public Optional<ExportJob> findJob(String id, String username) {
+        return Optional.ofNullable(jobs.get(id)).filter(job -> job.getUsername().equals(username));
+    }
+
+    private void run(ExportJob job, User requester, String keyword, LocalDate startDate, LocalDate endDate,
+            Long categoryId, Sort sort) {
+        job.setStatus(ExportJob.Status.RUNNING);
+        Path target = exportLocation.resolve(job.getId() + (job.isGzip() ? ".csv.gz" : ".csv"));
+        Path partial = exportLocation.resolve(job.getId() + ".part");
+        try {
+            try (OutputStream file = Files.newOutputStream(partial);
+                    OutputStream out = job.isGzip() ? new GZIPOutputStream(file, BUFFER_SIZE) : file;
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                            BUFFER_SIZE)) {
+                expenseExportService.writeCsvFor(requester, keyword, startDate, endDate, categoryId, sort, writer,
+                        job::setRowsWritten);
+            }
+            // Only a complete file is ever visible under its final name
+            Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            job.setFile(target);
+            job.setStatus(ExportJob.Status.COMPLETED);
+        } catch (Exception ex) {
+            deleteQuietly(partial);
+            job.setErrorMessage("Export failed: " + ex.getMessage());
+            job.setStatus(ExportJob.Status.FAILED);
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            purgeExpired();
+        } catch (RuntimeException ex) {
+            System.err.println("Failed to purge expired exports. Error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Deletes finished jobs older than the retention, and their files. Files
+     * no job knows of any more, left by a restart or by an export cut short,
+     * partial ones included, are deleted once they are as old.
+     */
+    void purgeExpired() {
+        Instant cutoff = Instant.now().minus(retention);
+        jobs.values().removeIf(job -> {
+            if (!job.isFinished() || job.getCreatedAt().isAfter(cutoff)) {
+                return false;
+            }
+            if (job.getFile() != null) {
+                deleteQuietly(job.getFile());
+            }
+            return true;
+        });
+
+        // A running export keeps writing to its partial file, so only abandoned ones are this old
+        try (Stream<Path> files = Files.list(exportLocation)) {
+            files.filter(file -> isModifiedBefore(file, cutoff)).forEach(ExportJobService::deleteQuietly);
+        } catch (IOException ex) {
+            System.err.println("Failed to list export files in: " + exportLocation + ". Error: " + ex.getMessage());
+        }
+    }
+
+    private static boolean isModifiedBefore(Path file, Instant cutoff) {
+        try {
+            return Files.isRegularFile(file) && Files.getLastModifiedTime(file).toInstant().isBefore(cutoff);
+        } catch (IOException ex) {
+            // Gone already
+            return false;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            System.err.println("Failed to delete export file: " + path + ". Error: " + ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        ScheduledExecutorService current = purger;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.FileDeletion;
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.FileDeletionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes stored files once nothing refers to them, outside the transaction
+ * that dropped the reference. The file names are written to the
+ * {@code file_deletions} outbox in that transaction, so a rollback leaves the
+ * files alone and a crash loses nothing. A background worker picks them up
+ * after commit and on a fixed delay, in batches, and retries failures with a
+ * growing delay.
+ * <p>
+ * Stored files are shared by content, so the worker checks again that no
+ * attachment or receipt image names a file before deleting it. A file
+ * uploaded again while its deletion was pending has its modification time
+ * refreshed by {@link FileStorageService}, and the worker leaves files
+ * modified within the grace period for a later round, by which time the new
+ * reference has committed. The storage service checks that time and deletes
+ * under the lock that storing takes, so the refresh cannot fall in between.
+ * <p>
+ * Outcomes: {@code /actuator/metrics/file.deletions}, backlog:
+ * {@code /actuator/metrics/file.deletions.pending}
+ */
+@Service
+public class FileDeletionService {
+
+    private final FileDeletionRepository fileDeletionRepository;
+    private final ExpenseAttachmentRepository expenseAttachmentRepository;
+    private final ExpenseRepository expenseRepository;
+    private final FileStorageService fileStorageService;
+    private final ThumbnailService thumbnailService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration pollInterval;
+    private final int batchSize;
+    private final Duration grace;
+    private final Duration retryDelay;
+    private final Duration maxRetryDelay;
+    private final Counter deleted;
+    private final Counter kept;
+    private final Counter retried;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicBoolean wakeUpQueued = new AtomicBoolean();
+    private volatile ScheduledExecutorService scheduler;
+
+    public FileDeletionService(FileDeletionRepository fileDeletionRepository,
+            ExpenseAttachmentRepository expenseAttachmentRepository, ExpenseRepository expenseRepository,
+            FileStorageService fileStorageService, ThumbnailService thumbnailService,
+            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+            @Value("${app.upload.deletion.enabled:true}") boolean enabled,
+            @Value("${app.upload.deletion.poll-interval:PT1M}") Duration pollInterval,
+            @Value("${app.upload.deletion.batch-size:100}") int batchSize,
+            @Value("${app.upload.deletion.grace:PT10M}") Duration grace,
+            @Value("${app.upload.deletion.retry-delay:PT1M}") Duration retryDelay,
+            @Value("${app.upload.deletion.max-retry-delay:PT6H}") Duration maxRetryDelay) {
+        this.fileDeletionRepository = fileDeletionRepository;
+        this.expenseAttachmentRepository = expenseAttachmentRepository;
+        this.expenseRepository = expenseRepository;
+        this.fileStorageService = fileStorageService;
+        this.thumbnailService = thumbnailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.pollInterval = pollInterval;
+        this.batchSize = batchSize;
+        this.grace = grace;
+        this.retryDelay = retryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+        this.deleted = outcomeCounter(meterRegistry, "deleted");
+        this.kept = outcomeCounter(meterRegistry, "kept");
+        this.retried = outcomeCounter(meterRegistry, "retried");
+        Gauge.builder("file.deletions.pending", pending, AtomicLong::get)
+                .description("Stored files waiting to be deleted, as of the last worker round")
+                .register(meterRegistry);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("file.deletions")
+                .description("Stored files taken off the deletion outbox, by outcome")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "file-deletion");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::processQuietly, 0, pollInterval.toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Records {@code fileNames} for deletion in the current transaction. The
+     * worker is woken once it commits; nothing is deleted if it rolls back.
+     */
+    @Transactional
+    public void scheduleDeletion(Collection<String> fileNames) {
+        LocalDateTime now = LocalDateTime.now();
+        List<FileDeletion> deletions = new ArrayList<>();
+        for (String fileName : new LinkedHashSet<>(fileNames)) {
+            if (fileName != null && !fileName.isEmpty()) {
+                deletions.add(new FileDeletion(fileName, now));
+            }
+        }
+        if (!deletions.isEmpty()) {
+            fileDeletionRepository.saveAll(deletions);
+            TransactionHooks.afterCommit(this::wakeUp);
+        }
+    }
+
+    private void wakeUp() {
+        ScheduledExecutorService current = scheduler;
+        // Several commits in a row share one extra round
+        if (current != null && wakeUpQueued.compareAndSet(false, true)) {
+            current.execute(() -> {
+                wakeUpQueued.set(false);
+                processQuietly();
+            });
+        }
+    }
+
+    private void processQuietly() {
+        try {
+            while (processDue() == batchSize) {
+                // Keep going while full batches come back
+            }
+        } catch (RuntimeException ex) {
+            System.err.println("File deletion round failed. Error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Works off one batch of due deletions and returns how many were taken.
+     * The outbox rows are read and settled in short transactions of their own;
+     * the files are deleted between them, with no connection held.
+     */
+    public synchronized int processDue() {
+        List<FileDeletion> due = new ArrayList<>();
+        Set<String> referenced = new HashSet<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            due.addAll(fileDeletionRepository.findByNextAttemptAtLessThanEqualOrderById(LocalDateTime.now(),
+                    PageRequest.of(0, batchSize)));
+            for (FileDeletion deletion : due) {
+                String fileName = deletion.getFileName();
+                if (expenseAttachmentRepository.countByFileName(fileName) > 0
+                        || expenseRepository.existsByReceiptImage(fileName)) {
+                    referenced.add(fileName);
+                }
+            }
+        });
+        if (due.isEmpty()) {
+            pending.set(transactionTemplate.execute(status -> fileDeletionRepository.count()));
+            return 0;
+        }
+
+        List<Long> done = new ArrayList<>();
+        List<FileDeletion> postponed = new ArrayList<>();
+        for (FileDeletion deletion : due) {
+            String fileName = deletion.getFileName();
+            try {
+                if (referenced.contains(fileName)) {
+                    kept.increment();
+                    done.add(deletion.getId());
+                    continue;
+                }
+                Instant modified = fileStorageService.deleteFileUnlessModifiedAfter(fileName,
+                        Instant.now().minus(grace));
+                if (modified != null) {
+                    // Uploaded again just now, its new reference may not have committed yet
+                    deletion.setNextAttemptAt(LocalDateTime.ofInstant(modified.plus(grace), ZoneId.systemDefault()));
+                    postponed.add(deletion);
+                    continue;
+                }
+                thumbnailService.delete(fileName);
+                deleted.increment();
+                done.add(deletion.getId());
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Failed to delete file: " + fileName + ". Error: " + ex.getMessage());
+                retried.increment();
+                deletion.setAttempts(deletion.getAttempts() + 1);
+                deletion.setLastError(truncate(ex.toString()));
+                deletion.setNextAttemptAt(LocalDateTime.now().plus(backoff(deletion.getAttempts())));
+                postponed.add(deletion);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            fileDeletionRepository.deleteAllByIdInBatch(done);
+            fileDeletionRepository.saveAll(postponed);
+        });
+        pending.set(transactionTemplate.execute(status -> fileDeletionRepository.count()));
+        return due.size();
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryDelay.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(maxRetryDelay) > 0 ? maxRetryDelay : delay;
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+}
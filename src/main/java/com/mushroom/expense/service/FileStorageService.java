@@ -5,62 +5,332 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
 
 @Service
 public class FileStorageService {
 
+    /**
+     * Where the servlet container spools multipart parts while the request is
+     * parsed ({@code spring.servlet.multipart.location}). Kept inside the
+     * upload directory so that storing a part is a rename on the same file
+     * system rather than a second copy of its bytes.
+     */
+    public static final String INCOMING_DIR = ".incoming";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern EXTENSION = Pattern.compile("\\.[a-z0-9]{1,10}");
+    private static final Pattern BLOB_NAME = Pattern.compile("[0-9a-f]{64}(\\.[a-z0-9]{1,10})?");
+    private static final int LOCK_STRIPES = 64;
+
     private final Path fileStorageLocation;
+    private final ReceiptImageNormalizer normalizer;
+    /**
+     * Taken by name around storing a blob and deleting it, so an upload
+     * that finds a blob in place cannot have it deleted from under it.
+     */
+    private final ReentrantLock[] fileLocks = new ReentrantLock[LOCK_STRIPES];
 
-    public FileStorageService(@Value("${app.upload.dir}") String uploadDir) {
+    public FileStorageService(@Value("${app.upload.dir}") String uploadDir, ReceiptImageNormalizer normalizer) {
         this.fileStorageLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.normalizer = normalizer;
+        for (int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new ReentrantLock();
+        }
         try {
-            Files.createDirectories(this.fileStorageLocation);
+            Files.createDirectories(this.fileStorageLocation.resolve(INCOMING_DIR));
         } catch (Exception ex) {
             throw new RuntimeException("Could not create the directory where the uploaded files will be stored.", ex);
         }
     }
 
+    /**
+     * Stores an uploaded part under the SHA-256 of its bytes, so a receipt
+     * uploaded again, to the same or another expense, shares the blob already
+     * on disk. The part is moved into {@link #INCOMING_DIR} first, which is a
+     * rename for parts the container spooled there, and hashed from that
+     * staged copy, so the bytes are written only once.
+     * <p>
+     * Several attachments may name the same blob, so it is deleted only once
+     * nothing references it any more, by the {@link FileDeletionService}.
+     */
     public String storeFile(MultipartFile file) {
-        // Normalize file name
-        String originalFileName = file.getOriginalFilename();
-        if (originalFileName == null || originalFileName.isEmpty()) {
-            throw new RuntimeException("Invalid file name");
+        return storeFiles(List.of(file), false).get(0);
+    }
+
+    /**
+     * Stores {@code files} as {@link #storeFile} does and returns their names
+     * in the same order. The files are staged and hashed concurrently, and
+     * photos are shrunk by the {@link ReceiptImageNormalizer} in between, all
+     * of them in parallel, unless {@code keepOriginals} asks for them to be
+     * stored exactly as uploaded. Call it before opening a transaction, so no
+     * connection is held while the disk works.
+     */
+    public List<String> storeFiles(List<MultipartFile> files, boolean keepOriginals) {
+        for (MultipartFile file : files) {
+            String originalFileName = file.getOriginalFilename();
+            if (originalFileName == null || originalFileName.isEmpty()) {
+                throw new RuntimeException("Invalid file name");
+            }
+            // Check if the file's name contains invalid characters
+            if (originalFileName.contains("..")) {
+                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + originalFileName);
+            }
+        }
+
+        List<ReceiptImageNormalizer.Upload> staged = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            Path stagedFile = this.fileStorageLocation.resolve(INCOMING_DIR).resolve(UUID.randomUUID() + ".part");
+            staged.add(new ReceiptImageNormalizer.Upload(stagedFile, extensionOf(file.getOriginalFilename())));
+        }
+        List<ReceiptImageNormalizer.Upload> normalized = staged;
+        boolean stored = false;
+        try {
+            List<ReceiptImageNormalizer.Upload> uploads = staged;
+            inParallel(files.size(), i -> {
+                // transferTo(File) hands the part to the container, which moves its spool file.
+                // transferTo(Path) would stream it through getInputStream() instead.
+                files.get(i).transferTo(uploads.get(i).file().toFile());
+                return null;
+            });
+            if (!keepOriginals) {
+                normalized = normalizer.normalizeAll(staged);
+            }
+            List<ReceiptImageNormalizer.Upload> adopted = normalized;
+            List<String> names = inParallel(adopted.size(),
+                    i -> adopt(adopted.get(i).file(), adopted.get(i).extension(), true));
+            stored = true;
+            return names;
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store the uploaded files. Please try again!", ex);
+        } finally {
+            // Whatever went wrong, nothing staged is left behind in .incoming
+            if (!stored) {
+                staged.forEach(upload -> deleteQuietly(upload.file()));
+                normalized.forEach(upload -> deleteQuietly(upload.file()));
+            }
         }
+    }
 
-        // Generate unique file name
-        String fileName = UUID.randomUUID().toString() + "_" + originalFileName;
+    private interface IndexedTask<T> {
+        T run(int index) throws IOException;
+    }
 
+    /**
+     * Runs {@code task} for every index up to {@code count}, each on its own
+     * virtual thread as they mostly wait on the disk, and returns the results
+     * in order. All of them finish before the first failure is thrown.
+     */
+    private static <T> List<T> inParallel(int count, IndexedTask<T> task) throws IOException {
+        if (count == 1) {
+            List<T> single = new ArrayList<>(1);
+            single.add(task.run(0));
+            return single;
+        }
+        List<Future<T>> futures = new ArrayList<>(count);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                futures.add(executor.submit(() -> task.run(index)));
+            }
+        }
+        List<T> results = new ArrayList<>(count);
         try {
-            // Check if the file's name contains invalid characters
-            if (fileName.contains("..")) {
-                throw new RuntimeException("Sorry! Filename contains invalid path sequence " + fileName);
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while storing uploads", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Gives a file stored under its old {@code UUID_originalName} scheme a
+     * content-addressed name and returns it. The old file is left in place,
+     * as rows may still point at it; it is linked rather than copied where the
+     * file system allows.
+     */
+    public String storeExisting(String fileName) throws IOException {
+        return adopt(locate(fileName), extensionOf(fileName), false);
+    }
+
+    /**
+     * The path of the stored file {@code fileName}, wherever the
+     * {@link UploadLayout} currently has it.
+     *
+     * @throws IllegalArgumentException if {@code fileName} is not a plain file name
+     */
+    public Path locate(String fileName) {
+        return UploadLayout.locate(this.fileStorageLocation, fileName);
+    }
+
+    /** Whether {@code fileName} is a blob name given out by {@link #storeFile}. */
+    public static boolean isContentAddressed(String fileName) {
+        return fileName != null && BLOB_NAME.matcher(fileName).matches();
+    }
+
+    private String adopt(Path source, String extension, boolean move) throws IOException {
+        String blobName = sha256(source) + extension;
+        ReentrantLock lock = lockFor(blobName);
+        lock.lock();
+        try {
+            Path existing = locate(blobName);
+            if (Files.exists(existing) && touch(existing)) {
+                if (move) {
+                    Files.delete(source);
+                }
+                return blobName;
+            }
+            Path blob = UploadLayout.shardedPath(this.fileStorageLocation, blobName);
+            Files.createDirectories(blob.getParent());
+            try {
+                if (move) {
+                    Files.move(source, blob, StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    link(source, blob);
+                    // A link keeps the old file's time, which would make the blob look long abandoned
+                    touch(blob);
+                }
+            } catch (FileAlreadyExistsException ex) {
+                // A concurrent upload of the same bytes got there first
+                if (move) {
+                    Files.delete(source);
+                }
+            }
+            return blobName;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(String fileName) {
+        return fileLocks[Math.floorMod(fileName.hashCode(), fileLocks.length)];
+    }
+
+    /**
+     * Marks a blob as just stored again, which tells a pending
+     * {@link FileDeletionService} round and the {@link OrphanFileCollector}
+     * to leave it be. False if it was deleted in the meantime.
+     */
+    private static boolean touch(Path blob) throws IOException {
+        try {
+            Files.setLastModifiedTime(blob, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+    private void link(Path existing, Path blob) throws IOException {
+        try {
+            Files.createLink(blob, existing);
+        } catch (FileAlreadyExistsException ex) {
+            throw ex;
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            Path partial = this.fileStorageLocation.resolve(INCOMING_DIR).resolve(UUID.randomUUID() + ".part");
+            Files.copy(existing, partial);
+            Files.move(partial, blob, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    private static String sha256(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read; (read = in.read(buffer)) != -1;) {
+                digest.update(buffer, 0, read);
             }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
 
-            // Copy file to the target location (Replacing existing file with the same name)
-            Path targetLocation = this.fileStorageLocation.resolve(fileName);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+    // Kept so AttachmentController serves blobs with the right content type
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        String extension = dot < 0 ? "" : fileName.substring(dot).toLowerCase(Locale.ROOT);
+        return EXTENSION.matcher(extension).matches() ? extension : "";
+    }
 
-            return fileName;
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
         } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + fileName + ". Please try again!", ex);
+            System.err.println("Failed to delete staged upload: " + path + ". Error: " + ex.getMessage());
         }
     }
 
-    public void deleteFile(String fileName) {
+    /**
+     * Deletes the stored file {@code fileName}, if it is there. Only the
+     * {@link FileDeletionService} calls this, once nothing refers to it.
+     */
+    public void deleteFile(String fileName) throws IOException {
         if (fileName != null && !fileName.isEmpty()) {
+            deleteFileUnlessModifiedAfter(fileName, Instant.MAX);
+        }
+    }
+
+    /**
+     * Deletes the stored file {@code fileName} unless it was modified after
+     * {@code cutoff}, and returns its modification time if it was kept, or
+     * {@code null} once it is gone. Checked and deleted under the same lock
+     * that storing takes, so an upload of the same bytes either refreshes the
+     * time first, and the file is kept, or finds it gone and stores it anew.
+     */
+    public Instant deleteFileUnlessModifiedAfter(String fileName, Instant cutoff) throws IOException {
+        ReentrantLock lock = lockFor(fileName);
+        lock.lock();
+        try {
             try {
-                Path filePath = this.fileStorageLocation.resolve(fileName).normalize();
-                Files.deleteIfExists(filePath);
-            } catch (IOException ex) {
-                // Log the error but don't throw to avoid breaking the transaction if possible,
-                // or throw if strict consistency is needed. For now, logging is better.
-                System.err.println("Failed to delete file: " + fileName + ". Error: " + ex.getMessage());
+                Instant modified = Files.getLastModifiedTime(locate(fileName)).toInstant();
+                if (modified.isAfter(cutoff)) {
+                    return modified;
+                }
+            } catch (NoSuchFileException ex) {
+                // Nothing to check, a flat copy is still deleted below
             }
+            // Flat first, so a concurrent migration cannot move it out of the way in between
+            Files.deleteIfExists(UploadLayout.flatPath(this.fileStorageLocation, fileName));
+            Files.deleteIfExists(UploadLayout.shardedPath(this.fileStorageLocation, fileName));
+            return null;
+        } finally {
+            lock.unlock();
         }
     }
 }
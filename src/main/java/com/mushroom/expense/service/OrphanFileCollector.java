@@ -0,0 +1,360 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Finds stored files, and previews, that no attachment or receipt image refers
+ * to, such as files left behind by failed requests. They are moved to
+ * {@link #QUARANTINE_DIR} first and only deleted once they have sat there for
+ * the retention period, so a file taken by mistake can be moved back.
+ * <p>
+ * The upload tree is walked in parallel, one task per prefix directory. The
+ * referenced names are then read from the database in ordered chunks and
+ * struck off the files found, so the database is read once per run rather
+ * than once per file. Files modified within the grace period are left alone:
+ * they may belong to an upload whose rows have not committed yet, and
+ * {@link FileStorageService} refreshes the time of a blob it stores again.
+ * <p>
+ * Files and bytes by action:
+ * {@code /actuator/metrics/upload.gc.files}, {@code /actuator/metrics/upload.gc.bytes}
+ */
+@Service
+public class OrphanFileCollector {
+
+    public static final String QUARANTINE_DIR = ".quarantine";
+
+    private static final Pattern PREFIX_DIR = Pattern.compile("[A-Za-z0-9]{2}");
+    private static final String THUMBNAIL_SUFFIX = ".jpg";
+
+    /** What one run found and did. */
+    public record Report(int scanned, int quarantined, long quarantinedBytes, int purged, long purgedBytes) {
+    }
+
+    /** A file found in the upload tree, and the stored file name it belongs to. */
+    private record Candidate(Path path, String fileName, long size) {
+    }
+
+    private final ExpenseAttachmentRepository expenseAttachmentRepository;
+    private final ExpenseRepository expenseRepository;
+    private final Path uploadLocation;
+    private final Path thumbnailLocation;
+    private final Path quarantineLocation;
+    private final boolean enabled;
+    private final Duration initialDelay;
+    private final Duration interval;
+    private final Duration grace;
+    private final Duration retention;
+    private final int chunkSize;
+    private final int workers;
+    private final Counter quarantinedFiles;
+    private final Counter quarantinedBytes;
+    private final Counter purgedFiles;
+    private final Counter purgedBytes;
+    private volatile ScheduledExecutorService scheduler;
+    private volatile ExecutorService walkers;
+
+    public OrphanFileCollector(ExpenseAttachmentRepository expenseAttachmentRepository,
+            ExpenseRepository expenseRepository, MeterRegistry meterRegistry,
+            @Value("${app.upload.dir}") String uploadDir,
+            @Value("${app.upload.gc.enabled:true}") boolean enabled,
+            @Value("${app.upload.gc.initial-delay:PT1H}") Duration initialDelay,
+            @Value("${app.upload.gc.interval:PT24H}") Duration interval,
+            @Value("${app.upload.gc.grace:PT24H}") Duration grace,
+            @Value("${app.upload.gc.retention:P7D}") Duration retention,
+            @Value("${app.upload.gc.chunk-size:1000}") int chunkSize,
+            @Value("${app.upload.gc.workers:4}") int workers) {
+        this.expenseAttachmentRepository = expenseAttachmentRepository;
+        this.expenseRepository = expenseRepository;
+        this.uploadLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.thumbnailLocation = this.uploadLocation.resolve(ThumbnailService.THUMBNAIL_DIR);
+        this.quarantineLocation = this.uploadLocation.resolve(QUARANTINE_DIR);
+        this.enabled = enabled;
+        this.initialDelay = initialDelay;
+        this.interval = interval;
+        this.grace = grace;
+        this.retention = retention;
+        this.chunkSize = chunkSize;
+        this.workers = workers;
+        this.quarantinedFiles = counter(meterRegistry, "upload.gc.files", "quarantined", null);
+        this.quarantinedBytes = counter(meterRegistry, "upload.gc.bytes", "quarantined", "bytes");
+        this.purgedFiles = counter(meterRegistry, "upload.gc.files", "purged", null);
+        this.purgedBytes = counter(meterRegistry, "upload.gc.bytes", "purged", "bytes");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String name, String action, String baseUnit) {
+        return Counter.builder(name)
+                .description("Unreferenced stored files moved to quarantine, or purged from it")
+                .tag("action", action)
+                .baseUnit(baseUnit)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "upload-gc");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    // What it did is counted in the upload.gc metrics
+                    collect();
+                } catch (IOException | RuntimeException ex) {
+                    System.err.println("Upload GC failed. Error: " + ex.getMessage());
+                }
+            }, initialDelay.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Quarantines the orphans older than the grace period, then purges what has been quarantined long enough. */
+    public synchronized Report collect() throws IOException {
+        Instant cutoff = Instant.now().minus(grace);
+        Map<String, List<Candidate>> candidates = findCandidates(cutoff);
+        int scanned = candidates.values().stream().mapToInt(List::size).sum();
+
+        strikeOffReferenced(candidates, expenseAttachmentRepository::findFileNamesAfter);
+        strikeOffReferenced(candidates, expenseRepository::findReceiptImagesAfter);
+
+        int quarantined = 0;
+        long quarantinedSize = 0;
+        for (List<Candidate> orphans : candidates.values()) {
+            for (Candidate orphan : orphans) {
+                try {
+                    if (quarantine(orphan, cutoff)) {
+                        quarantined++;
+                        quarantinedSize += orphan.size();
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Failed to quarantine file: " + orphan.path() + ". Error: " + ex.getMessage());
+                }
+            }
+        }
+        quarantinedFiles.increment(quarantined);
+        quarantinedBytes.increment(quarantinedSize);
+
+        int purged = 0;
+        long purgedSize = 0;
+        for (Candidate expired : findExpired(Instant.now().minus(retention))) {
+            try {
+                Files.delete(expired.path());
+                purged++;
+                purgedSize += expired.size();
+            } catch (IOException ex) {
+                System.err.println("Failed to purge file: " + expired.path() + ". Error: " + ex.getMessage());
+            }
+        }
+        purgedFiles.increment(purged);
+        purgedBytes.increment(purgedSize);
+
+        return new Report(scanned, quarantined, quarantinedSize, purged, purgedSize);
+    }
+
+    /**
+     * Every stored file and preview last modified before {@code cutoff}, by
+     * the stored file name it belongs to. Prefix directories are walked in
+     * parallel; files still flat in a root, and anything hidden or unrelated
+     * such as exports, are handled here or skipped.
+     */
+    private Map<String, List<Candidate>> findCandidates(Instant cutoff) throws IOException {
+        List<Callable<List<Candidate>>> walks = new ArrayList<>();
+        Map<String, List<Candidate>> candidates = new HashMap<>();
+        for (Path root : List.of(uploadLocation, thumbnailLocation)) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            boolean previews = root.equals(thumbnailLocation);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (Files.isDirectory(entry)) {
+                        if (PREFIX_DIR.matcher(name).matches()) {
+                            walks.add(() -> walk(entry, previews, cutoff));
+                        }
+                    } else {
+                        addCandidate(candidates, candidate(entry, previews, cutoff));
+                    }
+                }
+            }
+        }
+
+        try {
+            for (Future<List<Candidate>> walk : walkers().invokeAll(walks)) {
+                walk.get().forEach(candidate -> addCandidate(candidates, candidate));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while walking the upload directory", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+        return candidates;
+    }
+
+    private List<Candidate> walk(Path prefixDir, boolean previews, Instant cutoff) {
+        List<Candidate> found = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(prefixDir)) {
+            files.filter(Files::isRegularFile).forEach(file -> {
+                Candidate candidate = candidate(file, previews, cutoff);
+                if (candidate != null) {
+                    found.add(candidate);
+                }
+            });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return found;
+    }
+
+    private static void addCandidate(Map<String, List<Candidate>> candidates, Candidate candidate) {
+        if (candidate != null) {
+            candidates.computeIfAbsent(candidate.fileName(), name -> new ArrayList<>(1)).add(candidate);
+        }
+    }
+
+    /** The file as a candidate, or null when it is not a stored file or preview, or is too recent. */
+    private static Candidate candidate(Path file, boolean preview, Instant cutoff) {
+        String name = file.getFileName().toString();
+        if (name.startsWith(".") || name.endsWith(".part")) {
+            return null;
+        }
+        if (preview) {
+            if (!name.endsWith(THUMBNAIL_SUFFIX)) {
+                return null;
+            }
+            name = name.substring(0, name.length() - THUMBNAIL_SUFFIX.length());
+        }
+        try {
+            UploadLayout.requireFileName(name);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                return null;
+            }
+            return new Candidate(file, name, attributes.size());
+        } catch (IllegalArgumentException | IOException ex) {
+            // Invalid names are not ours, and a file gone meanwhile needs no collecting
+            return null;
+        }
+    }
+
+    /**
+     * Removes every name the database refers to from {@code candidates},
+     * reading them a chunk at a time in the database's own order.
+     */
+    private void strikeOffReferenced(Map<String, List<Candidate>> candidates,
+            BiFunction<String, Pageable, List<String>> namesAfter) {
+        String after = "";
+        List<String> chunk;
+        do {
+            chunk = namesAfter.apply(after, PageRequest.of(0, chunkSize));
+            chunk.forEach(candidates::remove);
+            if (!chunk.isEmpty()) {
+                after = chunk.get(chunk.size() - 1);
+            }
+        } while (chunk.size() == chunkSize);
+    }
+
+    /**
+     * Moves an orphan to the same place under {@link #QUARANTINE_DIR}, and
+     * stamps it with the time it arrived there. False if it was stored again
+     * since it was found, or is gone.
+     */
+    private boolean quarantine(Candidate orphan, Instant cutoff) throws IOException {
+        try {
+            if (!Files.getLastModifiedTime(orphan.path()).toInstant().isBefore(cutoff)) {
+                return false;
+            }
+            Path target = quarantineLocation.resolve(uploadLocation.relativize(orphan.path()));
+            Files.createDirectories(target.getParent());
+            Files.move(orphan.path(), target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.setLastModifiedTime(target, FileTime.from(Instant.now()));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+
+    /** The quarantined files that arrived before {@code cutoff}. */
+    private List<Candidate> findExpired(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(quarantineLocation)) {
+            return List.of();
+        }
+        List<Candidate> expired = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(quarantineLocation)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.lastModifiedTime().toInstant().isBefore(cutoff)) {
+                    expired.add(new Candidate(file, file.getFileName().toString(), attributes.size()));
+                }
+            }
+        }
+        return expired;
+    }
+
+    /** Started by the first run, so a disabled collector keeps no threads. Only called under the collect lock. */
+    private ExecutorService walkers() {
+        if (walkers == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            walkers = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "upload-gc-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return walkers;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ExecutorService currentWalkers = walkers;
+        if (currentWalkers != null) {
+            currentWalkers.shutdownNow();
+        }
+        ScheduledExecutorService current = scheduler;
+        if (current != null) {
+            current.shutdownNow();
+        }
+    }
+}
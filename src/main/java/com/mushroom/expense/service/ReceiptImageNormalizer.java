@@ -0,0 +1,133 @@
+package com.mushroom.expense.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shrinks uploaded JPEG photos before they are stored: caps their dimensions,
+ * re-encodes them at a set quality, turns them upright and drops their
+ * metadata, which on phone photos includes the location. The uploads of one
+ * request are processed in parallel on a small pool. Anything that is not a
+ * JPEG, or that would come out no smaller, is stored as uploaded.
+ * <p>
+ * Bytes saved per upload: {@code /actuator/metrics/receipts.normalization.bytes.saved}
+ */
+@Service
+public class ReceiptImageNormalizer {
+
+    private static final Set<String> JPEG_EXTENSIONS = Set.of(".jpg", ".jpeg");
+
+    /** A staged upload, and the extension it is stored with. */
+    public record Upload(Path file, String extension) {
+    }
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final float quality;
+    private final ExecutorService executor;
+    private final DistributionSummary bytesSaved;
+
+    public ReceiptImageNormalizer(@Value("${app.upload.normalize.enabled:true}") boolean enabled,
+            @Value("${app.upload.normalize.max-dimension:2000}") int maxDimension,
+            @Value("${app.upload.normalize.quality:0.85}") float quality,
+            @Value("${app.upload.normalize.workers:4}") int workers,
+            MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxDimension = maxDimension;
+        this.quality = quality;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "normalize-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.bytesSaved = DistributionSummary.builder("receipts.normalization.bytes.saved")
+                .description("Bytes by which normalization shrank an uploaded receipt photo")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Normalizes {@code uploads} in parallel and returns what to store in
+     * their place, in the same order. A normalized upload replaces its staged
+     * file, which is deleted.
+     */
+    public List<Upload> normalizeAll(List<Upload> uploads) {
+        if (!enabled) {
+            return uploads;
+        }
+        if (uploads.size() == 1) {
+            return List.of(normalize(uploads.get(0)));
+        }
+        List<Callable<Upload>> tasks = uploads.stream().<Callable<Upload>>map(upload -> () -> normalize(upload))
+                .toList();
+        List<Upload> normalized = new ArrayList<>(uploads.size());
+        try {
+            for (Future<Upload> result : executor.invokeAll(tasks)) {
+                normalized.add(result.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while normalizing uploads", ex);
+        } catch (ExecutionException ex) {
+            // normalize() keeps an upload as it is rather than failing, so this is a bug
+            throw new IllegalStateException(ex.getCause());
+        }
+        return normalized;
+    }
+
+    private Upload normalize(Upload upload) {
+        if (!JPEG_EXTENSIONS.contains(upload.extension())) {
+            return upload;
+        }
+        Path normalized = upload.file().resolveSibling(UUID.randomUUID() + ".part");
+        try {
+            BufferedImage image = ReceiptImages.readUpright(upload.file(), maxDimension);
+            if (image == null) {
+                return upload;
+            }
+            ReceiptImages.writeJpeg(image, normalized, quality);
+            long originalSize = Files.size(upload.file());
+            long normalizedSize = Files.size(normalized);
+            if (normalizedSize >= originalSize) {
+                Files.delete(normalized);
+                return upload;
+            }
+            Files.delete(upload.file());
+            bytesSaved.record(originalSize - normalizedSize);
+            return new Upload(normalized, ".jpg");
+        } catch (IOException | RuntimeException ex) {
+            // A photo ImageIO cannot handle, e.g. a CMYK JPEG, is stored as uploaded
+            try {
+                Files.deleteIfExists(normalized);
+            } catch (IOException deleteFailure) {
+                System.err.println("Failed to delete normalized upload: " + normalized + ". Error: "
+                        + deleteFailure.getMessage());
+            }
+            return upload;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
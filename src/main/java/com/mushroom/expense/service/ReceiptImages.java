@@ -0,0 +1,83 @@
+package com.mushroom.expense.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/** Decoding and re-encoding of receipt photos, shared by previews and upload normalization. */
+final class ReceiptImages {
+
+    private ReceiptImages() {
+    }
+
+    /**
+     * Reads {@code file} scaled to fit within {@code maxDimension}, upright
+     * and on white, as JPEG has no transparency. Large images are decoded
+     * only every n-th pixel, which keeps memory near the result's size rather
+     * than the photo's. Returns {@code null} when ImageIO cannot read the file.
+     */
+    static BufferedImage readUpright(Path file, int maxDimension) throws IOException {
+        BufferedImage decoded;
+        try (ImageInputStream input = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if (readers == null || !readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int largest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, largest / (maxDimension * 2));
+                param.setSourceSubsampling(step, step, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int orientation = ExifOrientation.read(file);
+        double scale = Math.min(1.0, (double) maxDimension / Math.max(decoded.getWidth(), decoded.getHeight()));
+        int width = Math.max(1, (int) Math.round(decoded.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(decoded.getHeight() * scale));
+        boolean swapped = ExifOrientation.swapsDimensions(orientation);
+        BufferedImage upright = new BufferedImage(swapped ? height : width, swapped ? width : height,
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = upright.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.transform(ExifOrientation.transform(orientation, width, height));
+            graphics.drawImage(decoded, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return upright;
+    }
+
+    /** Writes {@code image} as a JPEG at {@code quality}, without any metadata. */
+    static void writeJpeg(BufferedImage image, Path target, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(target.toFile())) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+}
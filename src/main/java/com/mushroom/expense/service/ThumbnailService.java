@@ -0,0 +1,156 @@
+package com.mushroom.expense.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downscaled JPEG previews of receipt images, kept under
+ * {@link #THUMBNAIL_DIR} in the upload area, in the same {@link UploadLayout},
+ * and named after the file they show. Stored files never change under their
+ * name, so neither do their previews.
+ * <p>
+ * Previews are queued on a small bounded pool once an upload commits. One
+ * that is missing when asked for, because the queue was full or the file
+ * predates previews, is generated on the spot. Decoding a phone photo takes
+ * tens of megabytes, so the pool and on-demand requests share a limit on how
+ * many run at once. Previews are turned upright by the photo's EXIF
+ * orientation. Files ImageIO cannot read, such as PDFs, get no preview.
+ */
+@Service
+public class ThumbnailService {
+
+    public static final String THUMBNAIL_DIR = ".thumbnails";
+
+    private final FileStorageService fileStorageService;
+    private final Path thumbnailLocation;
+    private final int maxDimension;
+    private final float quality;
+    private final Semaphore decoders;
+    private final ThreadPoolExecutor executor;
+
+    public ThumbnailService(FileStorageService fileStorageService, @Value("${app.upload.dir}") String uploadDir,
+            @Value("${app.thumbnail.max-dimension:800}") int maxDimension,
+            @Value("${app.thumbnail.quality:0.8}") float quality,
+            @Value("${app.thumbnail.workers:2}") int workers,
+            @Value("${app.thumbnail.queue-capacity:200}") int queueCapacity) {
+        this.fileStorageService = fileStorageService;
+        this.thumbnailLocation = Paths.get(uploadDir).toAbsolutePath().normalize().resolve(THUMBNAIL_DIR);
+        this.maxDimension = maxDimension;
+        this.quality = quality;
+        this.decoders = new Semaphore(workers);
+        try {
+            Files.createDirectories(this.thumbnailLocation);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not create the directory where thumbnails will be stored.", ex);
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /** Queues previews of {@code fileNames}. Whatever does not fit in the queue is generated when first asked for. */
+    public void generateLater(Collection<String> fileNames) {
+        for (String fileName : fileNames) {
+            if (isPdf(fileName)) {
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        thumbnail(fileName);
+                    } catch (IOException | RuntimeException ex) {
+                        System.err.println("Failed to create thumbnail for: " + fileName + ". Error: " + ex.getMessage());
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                // Generated on demand instead
+            }
+        }
+    }
+
+    /**
+     * The preview of {@code fileName}, generated first if needed. Empty when
+     * the file is not an image ImageIO can read.
+     *
+     * @throws NoSuchFileException if there is no stored file of that name
+     */
+    public Optional<Path> thumbnail(String fileName) throws IOException {
+        Path original = fileStorageService.locate(fileName);
+        Path thumbnail = UploadLayout.locate(thumbnailLocation, fileName + ".jpg");
+        if (Files.exists(thumbnail)) {
+            return Optional.of(thumbnail);
+        }
+        if (!Files.isRegularFile(original)) {
+            throw new NoSuchFileException(fileName);
+        }
+        if (isPdf(fileName)) {
+            return Optional.empty();
+        }
+
+        decoders.acquireUninterruptibly();
+        try {
+            // Another request may have written it while this one waited
+            if (Files.exists(thumbnail)) {
+                return Optional.of(thumbnail);
+            }
+            BufferedImage image = ReceiptImages.readUpright(original, maxDimension);
+            if (image == null) {
+                return Optional.empty();
+            }
+            thumbnail = UploadLayout.shardedPath(thumbnailLocation, fileName + ".jpg");
+            Files.createDirectories(thumbnail.getParent());
+            Path partial = thumbnailLocation.resolve(UUID.randomUUID() + ".part");
+            try {
+                ReceiptImages.writeJpeg(image, partial, quality);
+                Files.move(partial, thumbnail, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(partial);
+            }
+            return Optional.of(thumbnail);
+        } finally {
+            decoders.release();
+        }
+    }
+
+    public static boolean isPdf(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(".pdf");
+    }
+
+    /** Deletes the preview of a stored file that is being deleted. */
+    public void delete(String fileName) {
+        try {
+            Files.deleteIfExists(UploadLayout.flatPath(thumbnailLocation, fileName + ".jpg"));
+            Files.deleteIfExists(UploadLayout.shardedPath(thumbnailLocation, fileName + ".jpg"));
+        } catch (IOException | IllegalArgumentException ex) {
+            System.err.println("Failed to delete thumbnail for: " + fileName + ". Error: " + ex.getMessage());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
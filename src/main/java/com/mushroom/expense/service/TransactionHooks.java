@@ -0,0 +1,27 @@
+package com.mushroom.expense.service;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+final class TransactionHooks {
+
+    private TransactionHooks() {
+    }
+
+    /**
+     * Runs {@code action} once the current transaction commits, or right away
+     * when there is none. Nothing runs if the transaction rolls back.
+     */
+    static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mushroom.expense.service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Where a stored file lives under a root directory. Files are spread over two
+ * levels of prefix directories taken from their name, {@code ab/cd/abcd…}, so
+ * no directory grows past a few hundred entries. Names are content hashes or
+ * UUIDs, so the prefixes are evenly spread.
+ * <p>
+ * Files from before the sharded layout sit directly in the root until
+ * {@link UploadShardMigrator} moves them, so lookups try both places. Callers
+ * only ever deal in the flat name.
+ */
+public final class UploadLayout {
+
+    private static final Pattern SHARDABLE = Pattern.compile("[A-Za-z0-9]{4}.*");
+
+    private UploadLayout() {
+    }
+
+    /** Where {@code fileName} is stored under {@code root} in the sharded layout. */
+    public static Path shardedPath(Path root, String fileName) {
+        requireFileName(fileName);
+        if (!SHARDABLE.matcher(fileName).matches()) {
+            return root.resolve(fileName);
+        }
+        return root.resolve(fileName.substring(0, 2)).resolve(fileName.substring(2, 4)).resolve(fileName);
+    }
+
+    /** Where {@code fileName} is before it has been moved into the sharded layout. */
+    public static Path flatPath(Path root, String fileName) {
+        requireFileName(fileName);
+        return root.resolve(fileName);
+    }
+
+    /**
+     * Where {@code fileName} currently is: its sharded path, or its flat one
+     * while it has not been migrated. A file missing from both is reported at
+     * its sharded path.
+     */
+    public static Path locate(Path root, String fileName) {
+        Path sharded = shardedPath(root, fileName);
+        if (Files.exists(sharded)) {
+            return sharded;
+        }
+        Path flat = flatPath(root, fileName);
+        if (Files.exists(flat)) {
+            return flat;
+        }
+        // It may have been migrated between the two checks
+        return sharded;
+    }
+
+    /** Rejects anything that is not a plain file name, such as paths or hidden files. */
+    public static void requireFileName(String fileName) {
+        if (fileName == null || fileName.isEmpty() || fileName.startsWith(".") || fileName.contains("/")
+                || fileName.contains("\\")) {
+            throw new IllegalArgumentException("Invalid file name " + fileName);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.mushroom.expense.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Moves files stored before the sharded {@link UploadLayout} from the flat
+ * upload and preview directories into their prefix directories. It runs in
+ * the background after startup, in batches with a pause in between so that
+ * uploads and page loads keep their share of the disk. Lookups find a file
+ * in either place, so nothing needs to wait for it to finish.
+ */
+@Service
+public class UploadShardMigrator {
+
+    private final List<Path> roots;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pause;
+
+    public UploadShardMigrator(@Value("${app.upload.dir}") String uploadDir,
+            @Value("${app.upload.shard-migration.enabled:true}") boolean enabled,
+            @Value("${app.upload.shard-migration.batch-size:500}") int batchSize,
+            @Value("${app.upload.shard-migration.pause:PT1S}") Duration pause) {
+        Path uploadLocation = Paths.get(uploadDir).toAbsolutePath().normalize();
+        this.roots = List.of(uploadLocation, uploadLocation.resolve(ThumbnailService.THUMBNAIL_DIR));
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (enabled) {
+            Thread thread = new Thread(() -> {
+                try {
+                    migrateAll();
+                } catch (IOException ex) {
+                    System.err.println("Upload shard migration stopped. Error: " + ex.getMessage());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "upload-shard-migration");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Migrates batch after batch until no flat file is left, and returns how many were moved. */
+    public int migrateAll() throws IOException, InterruptedException {
+        int total = 0;
+        int moved;
+        do {
+            moved = migrateBatch();
+            total += moved;
+            if (moved == batchSize) {
+                Thread.sleep(pause.toMillis());
+            }
+        } while (moved == batchSize);
+        return total;
+    }
+
+    /** Moves up to one batch of flat files into their prefix directories and returns how many were moved. */
+    public int migrateBatch() throws IOException {
+        int moved = 0;
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                continue;
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(root, Files::isRegularFile)) {
+                for (Path flat : entries) {
+                    if (moved == batchSize) {
+                        return moved;
+                    }
+                    String fileName = flat.getFileName().toString();
+                    // Hidden files and previews still being written stay where they are
+                    if (fileName.startsWith(".") || fileName.endsWith(".part")) {
+                        continue;
+                    }
+                    Path sharded = UploadLayout.shardedPath(root, fileName);
+                    if (sharded.equals(flat)) {
+                        continue;
+                    }
+                    Files.createDirectories(sharded.getParent());
+                    // Same name means same content, so replacing a copy already there loses nothing
+                    Files.move(flat, sharded, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    moved++;
+                }
+            }
+        }
+        return moved;
+    }
+}
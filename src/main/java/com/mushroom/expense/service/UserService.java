@@ -2,6 +2,7 @@ package com.mushroom.expense.service;
 
 import com.mushroom.expense.entity.User;
 import com.mushroom.expense.repository.UserRepository;
+import com.mushroom.expense.security.UserSessions;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -15,10 +16,12 @@ public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final UserSessions userSessions;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, UserSessions userSessions) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.userSessions = userSessions;
     }
 
     public List<User> findAllUsers() {
@@ -37,11 +40,18 @@ public class UserService {
         if (!user.getPassword().startsWith("$2a$")) {
             user.setPassword(passwordEncoder.encode(user.getPassword()));
         }
-        return userRepository.save(user);
+        boolean existing = user.getId() != null;
+        User saved = userRepository.save(user);
+        // Logged-in sessions hold a snapshot of the account, so they have to go
+        if (existing) {
+            TransactionHooks.afterCommit(() -> userSessions.expireAll(saved.getId()));
+        }
+        return saved;
     }
 
     public void deleteUser(Long id) {
         userRepository.deleteById(id);
+        TransactionHooks.afterCommit(() -> userSessions.expireAll(id));
     }
 
     public Optional<User> findByUsername(String username) {
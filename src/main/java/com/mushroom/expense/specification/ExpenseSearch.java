@@ -0,0 +1,70 @@
+package com.mushroom.expense.specification;
+
+import org.hibernate.boot.model.FunctionContributions;
+import org.hibernate.boot.model.FunctionContributor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.type.BasicType;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Keyword search over expenses.
+ * <p>
+ * An expense is matched on a single search document, the lower-cased
+ * description and batch id. On PostgreSQL that exact expression carries a
+ * pg_trgm GIN index, so substring matches no longer scan the table, and
+ * results are ranked by trigram word similarity. Other databases (H2 in dev)
+ * run the same predicate unindexed and rank by how early the keyword occurs.
+ * <p>
+ * The SQL is registered as the HQL functions {@code expense_search_document}
+ * and {@code expense_search_rank} so criteria queries and the native dashboard
+ * query share one definition.
+ */
+public class ExpenseSearch implements FunctionContributor {
+
+    public static final String SORT_FIELD = "relevance";
+
+    public static final String DOCUMENT_FUNCTION = "expense_search_document";
+    public static final String RANK_FUNCTION = "expense_search_rank";
+
+    private static final String DOCUMENT_SQL = "lower(coalesce(?1, '') || ' ' || coalesce(?2, ''))";
+    private static final String POSTGRES_RANK_SQL = "word_similarity(?2, ?1)";
+    private static final String FALLBACK_RANK_SQL = "case when locate(?2, ?1) = 0 then 0.0 else 1.0 / locate(?2, ?1) end";
+
+    @Override
+    public void contributeFunctions(FunctionContributions functionContributions) {
+        BasicType<String> stringType = functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                .resolve(StandardBasicTypes.STRING);
+        BasicType<Double> doubleType = functionContributions.getTypeConfiguration().getBasicTypeRegistry()
+                .resolve(StandardBasicTypes.DOUBLE);
+        functionContributions.getFunctionRegistry().registerPattern(DOCUMENT_FUNCTION, DOCUMENT_SQL, stringType);
+        functionContributions.getFunctionRegistry().registerPattern(RANK_FUNCTION,
+                rankPattern(functionContributions.getDialect()), doubleType);
+    }
+
+    public static boolean hasKeyword(String keyword) {
+        return keyword != null && !keyword.trim().isEmpty();
+    }
+
+    public static String normalize(String keyword) {
+        return keyword.trim().toLowerCase();
+    }
+
+    public static String likePattern(String keyword) {
+        return "%" + normalize(keyword) + "%";
+    }
+
+    /** The search document over the expenses table aliased as {@code alias}. */
+    public static String documentSql(String alias) {
+        return DOCUMENT_SQL.replace("?1", alias + ".description").replace("?2", alias + ".batch_id");
+    }
+
+    /** The rank of {@code documentSql} against {@code keywordSql}, higher is better. */
+    public static String rankSql(Dialect dialect, String documentSql, String keywordSql) {
+        return rankPattern(dialect).replace("?1", documentSql).replace("?2", keywordSql);
+    }
+
+    private static String rankPattern(Dialect dialect) {
+        return dialect instanceof PostgreSQLDialect ? POSTGRES_RANK_SQL : FALLBACK_RANK_SQL;
+    }
+}
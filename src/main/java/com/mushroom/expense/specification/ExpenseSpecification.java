@@ -1,11 +1,17 @@
 package com.mushroom.expense.specification;
 
+import com.mushroom.expense.entity.Category;
 import com.mushroom.expense.entity.Expense;
 import com.mushroom.expense.entity.ExpenseStatus;
+import com.mushroom.expense.entity.SubCategory;
 import com.mushroom.expense.entity.User;
 import org.springframework.data.jpa.domain.Specification;
 
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.Expression;
 import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -40,23 +46,52 @@ public class ExpenseSpecification {
                 predicates.add(criteriaBuilder.equal(root.get("category").get("id"), categoryId));
             }
 
-            // Filter by Keyword (Search)
-            if (keyword != null && !keyword.trim().isEmpty()) {
-                String likePattern = "%" + keyword.toLowerCase() + "%";
-                Predicate descriptionLike = criteriaBuilder.like(criteriaBuilder.lower(root.get("description")),
-                        likePattern);
-                Predicate batchIdLike = criteriaBuilder.like(criteriaBuilder.lower(root.get("batchId")), likePattern);
-                // Join for category/subcategory names if needed, but simple fields first
-                // To search category name, we need to access the joined path
-                Predicate categoryNameLike = criteriaBuilder
-                        .like(criteriaBuilder.lower(root.get("category").get("name")), likePattern);
-                Predicate subCategoryNameLike = criteriaBuilder
-                        .like(criteriaBuilder.lower(root.get("subCategory").get("name")), likePattern);
-
-                predicates.add(criteriaBuilder.or(descriptionLike, batchIdLike, categoryNameLike, subCategoryNameLike));
+            // Filter by Keyword (Search). The expense's own text goes through the
+            // indexed search document; category and subcategory names are
+            // resolved against their (small) tables instead of joining them in.
+            if (ExpenseSearch.hasKeyword(keyword)) {
+                String likePattern = ExpenseSearch.likePattern(keyword);
+                Predicate documentLike = criteriaBuilder.like(searchDocument(root, criteriaBuilder), likePattern);
+
+                Subquery<Long> categoryIds = query.subquery(Long.class);
+                Root<Category> category = categoryIds.from(Category.class);
+                categoryIds.select(category.get("id"))
+                        .where(criteriaBuilder.like(criteriaBuilder.lower(category.get("name")), likePattern));
+
+                Subquery<Long> subCategoryIds = query.subquery(Long.class);
+                Root<SubCategory> subCategory = subCategoryIds.from(SubCategory.class);
+                subCategoryIds.select(subCategory.get("id"))
+                        .where(criteriaBuilder.like(criteriaBuilder.lower(subCategory.get("name")), likePattern));
+
+                predicates.add(criteriaBuilder.or(documentLike,
+                        root.get("category").get("id").in(categoryIds),
+                        root.get("subCategory").get("id").in(subCategoryIds)));
             }
 
             return criteriaBuilder.and(predicates.toArray(new Predicate[0]));
         };
     }
+
+    /**
+     * Orders matches best first for {@code keyword}, newest first among equal
+     * ranks. Has no effect without a keyword or on count queries, and is only
+     * honoured when the page request itself is unsorted.
+     */
+    public static Specification<Expense> orderByRelevance(String keyword) {
+        return (root, query, criteriaBuilder) -> {
+            if (ExpenseSearch.hasKeyword(keyword) && !Long.class.equals(query.getResultType())) {
+                Expression<Double> rank = criteriaBuilder.function(ExpenseSearch.RANK_FUNCTION, Double.class,
+                        searchDocument(root, criteriaBuilder),
+                        criteriaBuilder.literal(ExpenseSearch.normalize(keyword)));
+                query.orderBy(criteriaBuilder.desc(rank), criteriaBuilder.desc(root.get("date")),
+                        criteriaBuilder.desc(root.get("id")));
+            }
+            return null;
+        };
+    }
+
+    private static Expression<String> searchDocument(Root<Expense> root, CriteriaBuilder criteriaBuilder) {
+        return criteriaBuilder.function(ExpenseSearch.DOCUMENT_FUNCTION, String.class,
+                root.get("description"), root.get("batchId"));
+    }
 }
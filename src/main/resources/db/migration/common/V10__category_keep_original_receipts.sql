@@ -0,0 +1,2 @@
+-- Receipt photos are downscaled on upload unless their category keeps originals
+alter table categories add column keep_original_receipts boolean default false not null;
@@ -0,0 +1,12 @@
+-- Outbox of stored files to delete. Rows are written in the transaction that
+-- drops the last reference and worked off after commit by FileDeletionService.
+create table file_deletions (
+    id bigint generated by default as identity,
+    file_name varchar(255) not null,
+    attempts integer default 0 not null,
+    next_attempt_at timestamp(6) not null,
+    last_error varchar(1000),
+    primary key (id)
+);
+
+create index idx_file_deletions_next_attempt on file_deletions (next_attempt_at);
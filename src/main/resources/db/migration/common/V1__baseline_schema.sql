@@ -0,0 +1,64 @@
+-- Schema as previously generated by Hibernate (ddl-auto=update). Databases
+-- created that way are baselined at this version and skip this script.
+
+create table categories (
+    id bigint generated by default as identity,
+    name varchar(255) not null unique,
+    primary key (id)
+);
+
+create table sub_categories (
+    id bigint generated by default as identity,
+    category_id bigint not null,
+    name varchar(255) not null,
+    primary key (id)
+);
+
+create table users (
+    id bigint generated by default as identity,
+    username varchar(255) not null unique,
+    password varchar(255) not null,
+    role varchar(255) not null,
+    enabled boolean not null,
+    primary key (id)
+);
+
+create table expenses (
+    id bigint generated by default as identity,
+    description varchar(255) not null,
+    amount float(53) not null,
+    date date not null,
+    payment_mode varchar(255) not null check (payment_mode in ('CASH','UPI','BANK_TRANSFER','CARD')),
+    tax_percentage float(53),
+    batch_id varchar(255),
+    receipt_image varchar(255),
+    status varchar(255) not null check (status in ('DRAFT','SUBMITTED','APPROVED','REJECTED','QUERIES_RAISED')),
+    user_id bigint not null,
+    category_id bigint not null,
+    sub_category_id bigint not null,
+    primary key (id)
+);
+
+create table expense_attachments (
+    id bigint generated by default as identity,
+    expense_id bigint not null,
+    file_name varchar(255) not null,
+    primary key (id)
+);
+
+create table expense_comments (
+    id bigint generated by default as identity,
+    expense_id bigint not null,
+    user_id bigint not null,
+    message varchar(255) not null,
+    timestamp timestamp(6) not null,
+    primary key (id)
+);
+
+alter table sub_categories add constraint FKjwy7imy3rf6r99x48ydq45otw foreign key (category_id) references categories;
+alter table expenses add constraint FKhpk0n2cbnfiuu5nrgl0ika3hq foreign key (user_id) references users;
+alter table expenses add constraint FKjao23ohq935a4qrorwwsen0lr foreign key (category_id) references categories;
+alter table expenses add constraint FKiqed99u9ryei1qxu3wmwrtjjq foreign key (sub_category_id) references sub_categories;
+alter table expense_attachments add constraint FKb5kychy9fwosy91buig9fj2bt foreign key (expense_id) references expenses;
+alter table expense_comments add constraint FKbgkj7ba6ih9c9rq705kx3tfea foreign key (expense_id) references expenses;
+alter table expense_comments add constraint FK3oflobfx8x25larjrxoui2yci foreign key (user_id) references users;
@@ -0,0 +1,23 @@
+-- Spend totals by month, category, subcategory, status and payment mode,
+-- maintained incrementally by ExpenseRollupService.
+create table expense_rollups (
+    rollup_month date not null,
+    category_id bigint not null,
+    sub_category_id bigint not null,
+    status varchar(32) not null,
+    payment_mode varchar(32) not null,
+    expense_count bigint not null,
+    amount_total float(53) not null,
+    tax_total float(53) not null,
+    primary key (rollup_month, category_id, sub_category_id, status, payment_mode)
+);
+
+-- Reports filter by status and a month range
+create index idx_expense_rollups_status_month on expense_rollups (status, rollup_month);
+
+insert into expense_rollups (rollup_month, category_id, sub_category_id, status, payment_mode, expense_count,
+        amount_total, tax_total)
+select cast(date_trunc('month', date) as date), category_id, sub_category_id, status, payment_mode, count(*),
+        sum(amount), sum(amount * coalesce(tax_percentage, 0) / 100)
+from expenses
+group by cast(date_trunc('month', date) as date), category_id, sub_category_id, status, payment_mode;
@@ -0,0 +1,38 @@
+-- Money becomes exact: amounts in minor units (paise) and tax rates in basis
+-- points (hundredths of a percent) instead of floating point.
+alter table expenses add column amount_minor bigint;
+alter table expenses add column tax_basis_points integer;
+
+update expenses
+set amount_minor = cast(round(amount * 100) as bigint),
+    tax_basis_points = cast(round(coalesce(tax_percentage, 0) * 100) as integer);
+
+alter table expenses alter column amount_minor set not null;
+alter table expenses alter column tax_basis_points set not null;
+alter table expenses drop column amount;
+alter table expenses drop column tax_percentage;
+
+-- Rollup totals follow, in minor units. Tax is rounded half up per expense,
+-- as Money.tax does.
+drop table expense_rollups;
+
+create table expense_rollups (
+    rollup_month date not null,
+    category_id bigint not null,
+    sub_category_id bigint not null,
+    status varchar(32) not null,
+    payment_mode varchar(32) not null,
+    expense_count bigint not null,
+    amount_total bigint not null,
+    tax_total bigint not null,
+    primary key (rollup_month, category_id, sub_category_id, status, payment_mode)
+);
+
+create index idx_expense_rollups_status_month on expense_rollups (status, rollup_month);
+
+insert into expense_rollups (rollup_month, category_id, sub_category_id, status, payment_mode, expense_count,
+        amount_total, tax_total)
+select cast(date_trunc('month', date) as date), category_id, sub_category_id, status, payment_mode, count(*),
+        sum(amount_minor), sum((amount_minor * tax_basis_points + 5000) / 10000)
+from expenses
+group by cast(date_trunc('month', date) as date), category_id, sub_category_id, status, payment_mode;
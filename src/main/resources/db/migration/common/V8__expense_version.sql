@@ -0,0 +1,3 @@
+-- Optimistic locking: every update of an expense bumps its version, and a
+-- write based on an older version is refused.
+alter table expenses add column version bigint default 0 not null;
@@ -0,0 +1,4 @@
+-- Attachments share content-addressed files, which are only deleted once no
+-- attachment or legacy receipt image references them any more.
+create index idx_expense_attachments_file_name on expense_attachments (file_name);
+create index idx_expenses_receipt_image on expenses (receipt_image);
@@ -0,0 +1,7 @@
+-- Same access paths as the PostgreSQL migration, without INCLUDE columns
+create index idx_expenses_user_status_date on expenses (user_id, status, date desc, id desc);
+create index idx_expenses_status_date on expenses (status, date desc, id desc);
+create index idx_expenses_status_category_date on expenses (status, category_id, date desc, id desc);
+create index idx_expense_attachments_expense on expense_attachments (expense_id);
+create index idx_expense_comments_expense on expense_comments (expense_id);
+create index idx_sub_categories_category on sub_categories (category_id);
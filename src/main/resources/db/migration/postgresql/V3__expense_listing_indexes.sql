@@ -0,0 +1,22 @@
+-- Built CONCURRENTLY so writes continue during the build; Flyway runs this
+-- script outside a transaction. Keep non-concurrent DDL out of this file.
+
+-- Own listings: user + status, newest first (ExpenseSpecification, dashboard buckets)
+create index concurrently if not exists idx_expenses_user_status_date
+    on expenses (user_id, status, date desc, id desc) include (amount, category_id);
+
+-- Shared review queues: status, newest first, optionally by date range
+create index concurrently if not exists idx_expenses_status_date
+    on expenses (status, date desc, id desc) include (amount, category_id, user_id);
+
+-- Review queues filtered by category
+create index concurrently if not exists idx_expenses_status_category_date
+    on expenses (status, category_id, date desc, id desc) include (amount, user_id);
+
+-- Foreign keys used by attachment/comment loading and the subcategory lookup
+create index concurrently if not exists idx_expense_attachments_expense
+    on expense_attachments (expense_id);
+create index concurrently if not exists idx_expense_comments_expense
+    on expense_comments (expense_id);
+create index concurrently if not exists idx_sub_categories_category
+    on sub_categories (category_id);
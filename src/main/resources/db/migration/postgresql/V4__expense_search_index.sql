@@ -0,0 +1,4 @@
+-- Trigram index backing keyword search (see ExpenseSearch). The indexed
+-- expression must stay identical to the expense_search_document function.
+create index concurrently if not exists idx_expenses_search_document
+    on expenses using gin ((lower(coalesce(description, '') || ' ' || coalesce(batch_id, ''))) gin_trgm_ops);
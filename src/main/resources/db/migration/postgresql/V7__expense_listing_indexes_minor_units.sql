@@ -0,0 +1,12 @@
+-- Dropping expenses.amount in V6 dropped the listing indexes that INCLUDEd it;
+-- rebuild them over amount_minor. Built CONCURRENTLY like V3, so Flyway runs
+-- this script outside a transaction.
+
+create index concurrently if not exists idx_expenses_user_status_date
+    on expenses (user_id, status, date desc, id desc) include (amount_minor, category_id);
+
+create index concurrently if not exists idx_expenses_status_date
+    on expenses (status, date desc, id desc) include (amount_minor, category_id, user_id);
+
+create index concurrently if not exists idx_expenses_status_category_date
+    on expenses (status, category_id, date desc, id desc) include (amount_minor, user_id);
@@ -0,0 +1,75 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.entity.SubCategory;
+import com.mushroom.expense.service.CatalogFragmentService;
+import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.ExpenseAnalyticsService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ApiRestController.class)
+@Import(CatalogFragmentService.class)
+class ApiRestControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private CategoryService categoryService;
+
+    @SpyBean
+    private CatalogFragmentService catalogFragmentService;
+
+    @MockBean
+    private ExpenseAnalyticsService expenseAnalyticsService;
+
+    @Test
+    @WithMockUser(username = "manager", roles = "MANAGER")
+    void getSubCategories_RendersOptionsWithCatalogETag() throws Exception {
+        SubCategory straw = new SubCategory();
+        straw.setId(7L);
+        straw.setName("Straw");
+        when(categoryService.getCatalogVersion()).thenReturn(42L);
+        when(categoryService.findSubCategoriesByCategoryId(3L)).thenReturn(List.of(straw));
+
+        mockMvc.perform(get("/api/subcategories").param("category", "3"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-42\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andExpect(content().contentType("text/html;charset=UTF-8"))
+                .andExpect(content().string(containsString("<option value=\"7\">Straw</option>")));
+    }
+
+    @Test
+    @WithMockUser(username = "manager", roles = "MANAGER")
+    void getSubCategories_AnswersMatchingETagWithoutRendering() throws Exception {
+        when(categoryService.getCatalogVersion()).thenReturn(42L);
+
+        mockMvc.perform(get("/api/subcategories").param("category", "3")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-42\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-42\""))
+                .andExpect(content().string(""));
+
+        verify(catalogFragmentService, never()).renderSubCategoryOptions(any(), anyLong());
+        verify(categoryService, never()).findSubCategoriesByCategoryId(any());
+    }
+}
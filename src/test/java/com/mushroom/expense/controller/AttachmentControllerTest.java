@@ -0,0 +1,121 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.security.WithAppUser;
+import com.mushroom.expense.service.ExpenseService;
+import com.mushroom.expense.service.FileStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(AttachmentController.class)
+class AttachmentControllerTest {
+
+    private static final String BLOB = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef.pdf";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private ExpenseService expenseService;
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = Files.write(tempDir.resolve(BLOB), "0123456789".getBytes());
+        when(fileStorageService.locate(BLOB)).thenReturn(file);
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void attachment_IsCachedForGoodAndRevalidatedByETag() throws Exception {
+        when(expenseService.canViewFile(eq(BLOB), any(User.class))).thenReturn(true);
+        String eTag = "\"" + BLOB.substring(0, 64) + "\"";
+
+        mockMvc.perform(get("/uploads/" + BLOB))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/pdf"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().string("0123456789"));
+        mockMvc.perform(get("/uploads/" + BLOB).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void attachment_ServesByteRanges() throws Exception {
+        when(expenseService.canViewFile(eq(BLOB), any(User.class))).thenReturn(true);
+
+        mockMvc.perform(get("/uploads/" + BLOB).header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(content().string("234"));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void attachment_UsesSendfileWhereTheContainerOffersIt() throws Exception {
+        when(expenseService.canViewFile(eq(BLOB), any(User.class))).thenReturn(true);
+
+        mockMvc.perform(get("/uploads/" + BLOB).header(HttpHeaders.RANGE, "bytes=-3")
+                .requestAttr(AttachmentController.SENDFILE_SUPPORT, Boolean.TRUE))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 3))
+                .andExpect(request().attribute(AttachmentController.SENDFILE_FILENAME, file.toString()))
+                .andExpect(request().attribute(AttachmentController.SENDFILE_START, 7L))
+                .andExpect(request().attribute(AttachmentController.SENDFILE_END, 10L))
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/uploads/" + BLOB).header(HttpHeaders.RANGE, "bytes=20-")
+                .requestAttr(AttachmentController.SENDFILE_SUPPORT, Boolean.TRUE))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    @WithAppUser(id = 3, username = "other", role = "MANAGER")
+    void attachment_OfAnExpenseTheRequesterCannotSee_IsNotFound() throws Exception {
+        when(expenseService.canViewFile(eq(BLOB), any(User.class))).thenReturn(false);
+
+        mockMvc.perform(get("/uploads/" + BLOB))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "manager", role = "MANAGER")
+    void attachment_FromTheUploadDirsSubfolders_IsNeverLookedUp() throws Exception {
+        when(expenseService.canViewFile(any(), any(User.class))).thenReturn(true);
+
+        mockMvc.perform(get("/uploads/exports/expenses-1.csv"))
+                .andExpect(view().name("error"));
+        mockMvc.perform(get("/uploads/.quarantine/01/23/" + BLOB))
+                .andExpect(view().name("error"));
+        verify(fileStorageService, never()).locate(any());
+    }
+}
@@ -1,59 +1,102 @@
 package com.mushroom.expense.controller;
 
+import com.mushroom.expense.config.CacheConfig;
 import com.mushroom.expense.entity.Expense;
 import com.mushroom.expense.entity.ExpenseStatus;
 import com.mushroom.expense.entity.User;
+import com.mushroom.expense.dto.CategorySpend;
+import com.mushroom.expense.dto.CursorPage;
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseRevision;
+import com.mushroom.expense.security.WithAppUser;
 import com.mushroom.expense.service.CategoryService;
+import com.mushroom.expense.service.DashboardService;
+import com.mushroom.expense.service.ExpenseExportService;
+import com.mushroom.expense.service.ExpenseRollupService;
 import com.mushroom.expense.service.ExpenseService;
-import com.mushroom.expense.service.UserService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.mock.mockito.MockBean;
-import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(ExpenseController.class)
+@Import({ DashboardFragmentCache.class, CacheConfig.class })
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
 class ExpenseControllerTest {
 
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private CacheManager cacheManager;
+
     @MockBean
     private ExpenseService expenseService;
 
     @MockBean
     private CategoryService categoryService;
 
+
+    @MockBean
+    private DashboardService dashboardService;
+
     @MockBean
-    private UserService userService;
+    private ExpenseExportService expenseExportService;
+
+    @MockBean
+    private ExpenseRollupService expenseRollupService;
 
     private User managerUser;
-    private User accountantUser;
     private Expense expense;
 
     @BeforeEach
     void setUp() {
+        cacheManager.getCache(DashboardFragmentCache.DASHBOARD_FRAGMENTS_CACHE).clear();
+
         managerUser = new User();
         managerUser.setId(1L);
         managerUser.setUsername("manager");
         managerUser.setRole("ROLE_MANAGER");
 
-        accountantUser = new User();
-        accountantUser.setId(2L);
-        accountantUser.setUsername("accountant");
-        accountantUser.setRole("ROLE_ACCOUNTANT");
-
         expense = new Expense();
         expense.setId(1L);
         expense.setStatus(ExpenseStatus.DRAFT);
@@ -63,11 +106,9 @@ class ExpenseControllerTest {
     }
 
     @Test
-    @WithMockUser(username = "manager", roles = "MANAGER")
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
     void dashboard_Manager_Success() throws Exception {
-        when(userService.findByUsername("manager")).thenReturn(Optional.of(managerUser));
-        when(expenseService.getExpenses(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(org.springframework.data.domain.Page.empty()); // Mock page return
+        stubEmptyBuckets();
 
         mockMvc.perform(get("/dashboard"))
                 .andExpect(status().isOk())
@@ -76,34 +117,184 @@ class ExpenseControllerTest {
     }
 
     @Test
-    @WithMockUser(username = "accountant", roles = "ACCOUNTANT")
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
     void dashboard_Accountant_Success() throws Exception {
-        when(userService.findByUsername("accountant")).thenReturn(Optional.of(accountantUser));
-        when(expenseService.getExpenses(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(org.springframework.data.domain.Page.empty()); // Mock page return
+        stubEmptyBuckets();
+        when(expenseRollupService.getSpendByCategory(any(), any(), eq(List.of(ExpenseStatus.APPROVED))))
+                .thenReturn(List.of(new CategorySpend("Energy", "Diesel", 3, 125050, 6250)));
 
         mockMvc.perform(get("/dashboard"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("accountant/dashboard"))
-                .andExpect(model().attributeExists("submittedExpenses"));
+                .andExpect(model().attributeExists("submittedExpenses"))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("1250.50")));
     }
 
     @Test
-    @WithMockUser(username = "manager", roles = "MANAGER")
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void dashboard_Accountant_ServesCachedTablesUntilTheirStatusChanges() throws Exception {
+        expense.setStatus(ExpenseStatus.SUBMITTED);
+        when(dashboardService.loadBuckets(any(), any(), any(), any(), any(), any(), anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    Map<String, Page<Expense>> pages = emptyPages(invocation.getArgument(1));
+                    pages.computeIfPresent("submittedExpenses", (name, page) -> new PageImpl<>(List.of(expense)));
+                    return pages;
+                });
+
+        String first = mockMvc.perform(get("/dashboard"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("/expense/approve/1")))
+                .andReturn().getResponse().getContentAsString();
+        String second = mockMvc.perform(get("/dashboard"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("/expense/approve/1")))
+                .andReturn().getResponse().getContentAsString();
+        verify(dashboardService, times(1)).loadBuckets(any(), any(), any(), any(), any(), any(), anyInt(), any());
+        // Each response carries its own CSRF token, not the one the table was rendered with
+        assertNotEquals(csrfValue(first), csrfValue(second));
+
+        when(expenseService.getDataVersion(ExpenseStatus.SUBMITTED)).thenReturn(1L);
+        mockMvc.perform(get("/dashboard")).andExpect(status().isOk());
+        verify(dashboardService).loadBuckets(any(),
+                argThat(buckets -> buckets.stream().map(DashboardBucket::name).toList()
+                        .equals(List.of("submittedExpenses"))),
+                any(), any(), any(), any(), anyInt(), any());
+    }
+
+    private static String csrfValue(String html) {
+        Matcher matcher = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"").matcher(html);
+        assertTrue(matcher.find(), "no CSRF field");
+        return matcher.group(1);
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void dashboardRows_Accountant_ReturnsNextSlice() throws Exception {
+        when(expenseService.getExpenses(isNull(), eq(List.of(ExpenseStatus.APPROVED)), any(), any(), any(), any(),
+                eq("abc"), anyInt(), any()))
+                .thenReturn(new CursorPage<>(List.of(expense), "next", "prev"));
+
+        mockMvc.perform(get("/dashboard/rows").param("status", "APPROVED").param("cursor", "abc"))
+                .andExpect(status().isOk())
+                .andExpect(view().name("fragments/expense_rows :: rows"))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("cursor=next")));
+    }
+
+    @Test
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
     void viewExpense_Success() throws Exception {
-        when(userService.findByUsername("manager")).thenReturn(Optional.of(managerUser));
+        when(expenseService.findRevision(1L)).thenReturn(Optional.of(new ExpenseRevision(3, 2)));
         when(expenseService.findById(1L)).thenReturn(Optional.of(expense));
 
         mockMvc.perform(get("/expense/view/1"))
                 .andExpect(status().isOk())
                 .andExpect(view().name("expense_view"))
+                .andExpect(header().string(HttpHeaders.ETAG,
+                        org.hamcrest.Matchers.matchesPattern("\"expense-1-3-2-0-ROLE_MANAGER-[0-9a-f]{16}\"")))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
                 .andExpect(model().attributeExists("expense"));
     }
 
     @Test
-    @WithMockUser(username = "accountant", roles = "ACCOUNTANT")
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
+    void viewExpense_AnswersMatchingETagWithoutLoading() throws Exception {
+        when(expenseService.findRevision(1L)).thenReturn(Optional.of(new ExpenseRevision(3, 2)));
+        when(expenseService.findById(1L)).thenReturn(Optional.of(expense));
+        MockHttpSession session = new MockHttpSession();
+        String eTag = mockMvc.perform(get("/expense/view/1").session(session))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/expense/view/1").session(session).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(expenseService, times(1)).findById(any());
+        verify(expenseService, times(1)).getComments(any());
+    }
+
+    @Test
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
+    void viewExpense_FromANewSession_IsRenderedWithThatSessionsCsrfToken() throws Exception {
+        when(expenseService.findRevision(1L)).thenReturn(Optional.of(new ExpenseRevision(3, 2)));
+        when(expenseService.findById(1L)).thenReturn(Optional.of(expense));
+        String eTag = mockMvc.perform(get("/expense/view/1").session(new MockHttpSession()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // As after logging out and in again: the cached page's forms would carry a dead token
+        mockMvc.perform(get("/expense/view/1").session(new MockHttpSession()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(view().name("expense_view"))
+                .andExpect(header().string(HttpHeaders.ETAG, org.hamcrest.Matchers.not(eTag)));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void approveExpense_PassesTheVersionThePageShowed() throws Exception {
+        when(expenseService.updateExpenseStatus(1L, ExpenseStatus.APPROVED, 4L))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Expense.class, 1L));
+
+        mockMvc.perform(post("/expense/approve/1").param("version", "4").with(csrf()))
+                .andExpect(status().isConflict())
+                .andExpect(view().name("error"));
+    }
+
+    @Test
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
+    void saveExpense_BindsMoneyAsMinorUnits() throws Exception {
+        ArgumentCaptor<Expense> saved = ArgumentCaptor.forClass(Expense.class);
+        ArgumentCaptor<User> owner = ArgumentCaptor.forClass(User.class);
+
+        mockMvc.perform(multipart("/expense")
+                .file(new MockMultipartFile("receiptFiles", new byte[0]))
+                .param("description", "Spawn")
+                .param("amount", "1234.5")
+                .param("taxBasisPoints", "18")
+                .with(csrf()))
+                .andExpect(status().is3xxRedirection());
+
+        verify(expenseService).saveExpenseForm(saved.capture(), owner.capture(), any(), any(), eq(false));
+        assertEquals(123450, saved.getValue().getAmount());
+        assertEquals(1800, saved.getValue().getTaxBasisPoints());
+        // Owner comes from the session principal, not a user lookup
+        assertEquals(1L, owner.getValue().getId());
+    }
+
+    @Test
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
+    void saveExpense_TreatsBlankTaxAsNone() throws Exception {
+        ArgumentCaptor<Expense> saved = ArgumentCaptor.forClass(Expense.class);
+
+        mockMvc.perform(multipart("/expense")
+                .file(new MockMultipartFile("receiptFiles", new byte[0]))
+                .param("amount", "10")
+                .param("taxBasisPoints", "")
+                .with(csrf()))
+                .andExpect(status().is3xxRedirection());
+
+        verify(expenseService).saveExpenseForm(saved.capture(), any(), any(), any(), eq(false));
+        assertEquals(1000, saved.getValue().getAmount());
+        assertEquals(0, saved.getValue().getTaxBasisPoints());
+    }
+
+    @Test
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
+    void viewExpense_ShowsMoneyWithTwoDecimals() throws Exception {
+        expense.setAmount(123405);
+        expense.setTaxBasisPoints(1850);
+        when(expenseService.findRevision(1L)).thenReturn(Optional.of(new ExpenseRevision(0, 0)));
+        when(expenseService.findById(1L)).thenReturn(Optional.of(expense));
+
+        mockMvc.perform(get("/expense/view/1"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("1234.05")))
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("18.50%")));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
     void approveExpense_Success() throws Exception {
-        when(userService.findByUsername("accountant")).thenReturn(Optional.of(accountantUser));
 
         mockMvc.perform(post("/expense/approve/1")
                 .with(csrf()))
@@ -112,9 +303,8 @@ class ExpenseControllerTest {
     }
 
     @Test
-    @WithMockUser(username = "manager", roles = "MANAGER")
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
     void deleteExpense_Success() throws Exception {
-        when(userService.findByUsername("manager")).thenReturn(Optional.of(managerUser));
 
         mockMvc.perform(get("/expense/delete/1"))
                 .andExpect(status().is3xxRedirection())
@@ -122,21 +312,23 @@ class ExpenseControllerTest {
     }
 
     @Test
-    @WithMockUser(username = "accountant", roles = "ACCOUNTANT")
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
     void rejectExpense_WithComment() throws Exception {
-        when(userService.findByUsername("accountant")).thenReturn(Optional.of(accountantUser));
 
         mockMvc.perform(post("/expense/reject/1")
                 .param("message", "Rejection Reason")
+                .param("version", "4")
                 .with(csrf()))
                 .andExpect(status().is3xxRedirection())
                 .andExpect(redirectedUrlPattern("/dashboard?*"));
+
+        verify(expenseService).rejectWithComment(eq(1L), any(User.class), eq("Rejection Reason"), eq(4L));
+        verify(expenseService, never()).updateExpenseStatus(any(), any());
     }
 
     @Test
-    @WithMockUser(username = "accountant", roles = "ACCOUNTANT")
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
     void queryExpense_Success() throws Exception {
-        when(userService.findByUsername("accountant")).thenReturn(Optional.of(accountantUser));
 
         mockMvc.perform(post("/expense/query/1")
                 .param("message", "Query Message")
@@ -146,14 +338,33 @@ class ExpenseControllerTest {
     }
 
     @Test
-    @WithMockUser(username = "manager", roles = "MANAGER")
+    @WithAppUser(id = 1, username = "manager", role = "MANAGER")
     void exportExpenses_Success() throws Exception {
-        when(userService.findByUsername("manager")).thenReturn(Optional.of(managerUser));
-        when(expenseService.getExpenses(any(), any(), any(), any(), any(), any(), any()))
-                .thenReturn(org.springframework.data.domain.Page.empty());
+        when(expenseExportService.writeCsvFor(argThat(user -> user.getId() == 1L), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Writer writer = invocation.getArgument(6);
+                    writer.write("ID,Date\n1,2024-01-01\n");
+                    return 1L;
+                });
 
         mockMvc.perform(get("/expense/export"))
                 .andExpect(status().isOk())
-                .andExpect(content().contentType("text/csv"));
+                .andExpect(content().contentType("text/csv;charset=UTF-8"))
+                .andExpect(content().string("ID,Date\n1,2024-01-01\n"));
+    }
+
+    private void stubEmptyBuckets() {
+        when(dashboardService.loadBuckets(any(), any(), any(), any(), any(), any(), anyInt(), any()))
+                .thenAnswer(invocation -> emptyPages(invocation.getArgument(1)));
+        when(dashboardService.loadBucketSummaries(any(), any(), any(), any(), any(), any(), anyInt(), any()))
+                .thenAnswer(invocation -> emptyPages(invocation.getArgument(1)));
+    }
+
+    private static <T> Map<String, Page<T>> emptyPages(List<DashboardBucket> buckets) {
+        Map<String, Page<T>> pages = new HashMap<>();
+        for (DashboardBucket bucket : buckets) {
+            pages.put(bucket.name(), Page.empty());
+        }
+        return pages;
     }
 }
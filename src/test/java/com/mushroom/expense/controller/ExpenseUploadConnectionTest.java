@@ -0,0 +1,159 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+import com.mushroom.expense.security.AppUserPrincipal;
+import com.mushroom.expense.service.FileStorageService;
+import com.mushroom.expense.service.ThumbnailService;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMultipartHttpServletRequestBuilder;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+
+/**
+ * Saving the expense form through the whole web stack, to check that no
+ * pooled connection is held while its uploads are stored.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ExpenseUploadConnectionTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.upload.dir", uploadDir::toString);
+        registry.add("app.upload.blob-migration.enabled", () -> "false");
+        registry.add("app.upload.shard-migration.enabled", () -> "false");
+        registry.add("app.upload.deletion.enabled", () -> "false");
+        registry.add("app.upload.gc.enabled", () -> "false");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpenseAttachmentRepository expenseAttachmentRepository;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    @MockBean
+    private ThumbnailService thumbnailService;
+
+    private final AtomicInteger activeWhileStoring = new AtomicInteger(-1);
+    private final String storedName = "receipt-" + System.nanoTime() + ".jpg";
+    private AppUserPrincipal principal;
+    private SubCategory straw;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        User manager = userRepository.findByUsername("uploader")
+                .orElseGet(() -> userRepository.save(new User("uploader", "pass", "ROLE_MANAGER")));
+        principal = new AppUserPrincipal(manager.getId(), manager.getUsername(), "pass", manager.getRole(), true);
+        Category substrate = new Category();
+        substrate.setName("Substrate " + System.nanoTime());
+        categoryRepository.save(substrate);
+        straw = new SubCategory();
+        straw.setName("Straw");
+        straw.setCategory(substrate);
+        subCategoryRepository.save(straw);
+
+        HikariDataSource pool = dataSource.unwrap(HikariDataSource.class);
+        when(fileStorageService.storeFiles(any(), anyBoolean())).thenAnswer(invocation -> {
+            activeWhileStoring.set(pool.getHikariPoolMXBean().getActiveConnections());
+            return List.of(storedName);
+        });
+    }
+
+    @Test
+    void newExpense_HoldsNoConnectionWhileStoringUploads() throws Exception {
+        mockMvc.perform(form().param("description", "Spawn"))
+                .andExpect(redirectedUrl("/dashboard"));
+
+        assertEquals(0, activeWhileStoring.get());
+        assertEquals(1, expenseAttachmentRepository.countByFileName(storedName));
+    }
+
+    @Test
+    void editedExpense_IsLoadedOnlyAfterTheUploadsAreStored() throws Exception {
+        Expense expense = new Expense();
+        expense.setDescription("Straw bales");
+        expense.setAmount(5000);
+        expense.setDate(LocalDate.of(2024, 1, 3));
+        expense.setPaymentMode(PaymentMode.CASH);
+        expense.setStatus(ExpenseStatus.REJECTED);
+        expense.setUser(userRepository.findById(principal.getId()).orElseThrow());
+        expense.setCategory(straw.getCategory());
+        expense.setSubCategory(straw);
+        expense = expenseRepository.save(expense);
+
+        mockMvc.perform(form()
+                .param("id", expense.getId().toString())
+                .param("version", expense.getVersion().toString())
+                .param("description", "Straw bales, resubmitted"))
+                .andExpect(redirectedUrl("/dashboard"));
+
+        assertEquals(0, activeWhileStoring.get());
+        Expense edited = expenseRepository.findById(expense.getId()).orElseThrow();
+        assertEquals("Straw bales, resubmitted", edited.getDescription());
+        assertEquals(ExpenseStatus.DRAFT, edited.getStatus());
+        assertEquals(1, expenseAttachmentRepository.countByFileName(storedName));
+    }
+
+    private MockMultipartHttpServletRequestBuilder form() {
+        MockMultipartHttpServletRequestBuilder request = multipart("/expense");
+        request.file(new MockMultipartFile("receiptFiles", "receipt.jpg", "image/jpeg", new byte[] { 1, 2, 3 }))
+                .param("category", straw.getCategory().getId().toString())
+                .param("subCategory", straw.getId().toString())
+                .param("amount", "50")
+                .param("paymentMode", PaymentMode.CASH.name())
+                .with(user(principal))
+                .with(csrf());
+        return request;
+    }
+}
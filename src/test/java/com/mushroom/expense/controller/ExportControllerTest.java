@@ -0,0 +1,88 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.security.WithAppUser;
+import com.mushroom.expense.service.ExportJob;
+import com.mushroom.expense.service.ExportJobService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ExportController.class)
+class ExportControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ExportJobService exportJobService;
+
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void submitExport_ReturnsPollingStatus() throws Exception {
+        when(exportJobService.submit(argThat(user -> user.getUsername().equals("accountant")), any(), any(), any(), any(), any(), anyBoolean()))
+                .thenReturn(new ExportJob("job-1", "accountant", false));
+
+        mockMvc.perform(post("/expense/export/jobs").with(csrf()).param("search", "straw"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(org.hamcrest.Matchers.containsString("hx-get=\"/expense/export/jobs/job-1\"")));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void downloadExport_ServesByteRanges() throws Exception {
+        Path file = Files.writeString(tempDir.resolve("job-1.csv"), "ID,Date\n1,2024-01-01\n");
+        ExportJob job = completedJob(file);
+        when(exportJobService.findJob("job-1", "accountant")).thenReturn(Optional.of(job));
+
+        mockMvc.perform(get("/expense/export/jobs/job-1/download"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"expenses.csv\""));
+
+        mockMvc.perform(get("/expense/export/jobs/job-1/download").header(HttpHeaders.RANGE, "bytes=8-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 8-20/21"))
+                .andExpect(content().string("1,2024-01-01\n"));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void unknownOrPurgedExport_IsNotFound() throws Exception {
+        when(exportJobService.findJob("purged", "accountant")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/expense/export/jobs/purged"))
+                .andExpect(status().isNotFound())
+                .andExpect(view().name("error"));
+        mockMvc.perform(get("/expense/export/jobs/purged/download"))
+                .andExpect(status().isNotFound())
+                .andExpect(view().name("error"));
+    }
+
+    private static ExportJob completedJob(Path file) {
+        ExportJob job = new ExportJob("job-1", "accountant", false);
+        job.setFile(file);
+        job.setStatus(ExportJob.Status.COMPLETED);
+        return job;
+    }
+}
@@ -0,0 +1,82 @@
+package com.mushroom.expense.controller;
+
+import com.mushroom.expense.entity.User;
+import com.mushroom.expense.security.WithAppUser;
+import com.mushroom.expense.service.ExpenseService;
+import com.mushroom.expense.service.ThumbnailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ThumbnailController.class)
+class ThumbnailControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ThumbnailService thumbnailService;
+
+    @MockBean
+    private ExpenseService expenseService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        when(expenseService.canViewFile(anyString(), any(User.class))).thenReturn(true);
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void thumbnail_IsCachedForGood() throws Exception {
+        Path file = Files.write(tempDir.resolve("receipt.png.jpg"), new byte[] { 1, 2, 3 });
+        when(thumbnailService.thumbnail("receipt.png")).thenReturn(Optional.of(file));
+
+        mockMvc.perform(get("/thumbnails/receipt.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=31536000, private, immutable"))
+                .andExpect(content().bytes(new byte[] { 1, 2, 3 }));
+    }
+
+    @Test
+    @WithAppUser(id = 2, username = "accountant", role = "ACCOUNTANT")
+    void thumbnail_PdfGetsThePlaceholder() throws Exception {
+        when(thumbnailService.thumbnail("invoice.pdf")).thenReturn(Optional.empty());
+        when(thumbnailService.thumbnail("gone.jpg")).thenThrow(new NoSuchFileException("gone.jpg"));
+
+        mockMvc.perform(get("/thumbnails/invoice.pdf"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/svg+xml"));
+        mockMvc.perform(get("/thumbnails/gone.jpg"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithAppUser(id = 3, username = "other", role = "MANAGER")
+    void thumbnail_OfAnExpenseTheRequesterCannotSee_IsNotFound() throws Exception {
+        when(expenseService.canViewFile(anyString(), any(User.class))).thenReturn(false);
+
+        mockMvc.perform(get("/thumbnails/receipt.png"))
+                .andExpect(status().isNotFound());
+        verify(thumbnailService, never()).thumbnail(anyString());
+    }
+}
@@ -55,12 +55,12 @@ class EntityTest {
         Expense expense = new Expense();
         expense.setId(1L);
         expense.setDescription("Lunch");
-        expense.setAmount(50.0);
+        expense.setAmount(5000);
         expense.setDate(LocalDate.now());
         expense.setStatus(ExpenseStatus.DRAFT);
         expense.setReceiptImage("img.jpg");
         expense.setPaymentMode(PaymentMode.CASH);
-        expense.setTaxPercentage(5.0);
+        expense.setTaxBasisPoints(500);
         expense.setBatchId("BATCH-001");
 
         User user = new User();
@@ -77,12 +77,12 @@ class EntityTest {
 
         assertEquals(1L, expense.getId());
         assertEquals("Lunch", expense.getDescription());
-        assertEquals(50.0, expense.getAmount());
+        assertEquals(5000, expense.getAmount());
         assertNotNull(expense.getDate());
         assertEquals(ExpenseStatus.DRAFT, expense.getStatus());
         assertEquals("img.jpg", expense.getReceiptImage());
         assertEquals(PaymentMode.CASH, expense.getPaymentMode());
-        assertEquals(5.0, expense.getTaxPercentage());
+        assertEquals(500, expense.getTaxBasisPoints());
         assertEquals("BATCH-001", expense.getBatchId());
         assertEquals(user, expense.getUser());
         assertEquals(category, expense.getCategory());
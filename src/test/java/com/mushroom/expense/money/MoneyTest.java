@@ -0,0 +1,38 @@
+package com.mushroom.expense.money;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void parse_ReadsUpToTwoDecimals() {
+        assertEquals(1234, Money.parse("12.34"));
+        assertEquals(1250, Money.parse(" 12.5 "));
+        assertEquals(1200, Money.parse("12"));
+        assertEquals(1200, Money.parse("12."));
+        assertEquals(5, Money.parse(".05"));
+        assertEquals(-1999, Money.parse("-19.99"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1.005"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("1,5"));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("."));
+        assertThrows(IllegalArgumentException.class, () -> Money.parse("99999999999999999999"));
+    }
+
+    @Test
+    void format_WritesTwoDecimals() {
+        assertEquals("12.34", Money.format(1234));
+        assertEquals("0.05", Money.format(5));
+        assertEquals("-19.90", Money.format(-1990));
+        assertEquals("0.00", Money.format(0));
+    }
+
+    @Test
+    void tax_RoundsHalfUpToTheMinorUnit() {
+        assertEquals(1800, Money.tax(10000, 1800));
+        assertEquals(101, Money.tax(2010, 500));
+        assertEquals(150, Money.tax(3001, 500));
+        assertEquals(0, Money.tax(10000, 0));
+    }
+}
@@ -0,0 +1,110 @@
+package com.mushroom.expense.repository;
+
+import com.mushroom.expense.entity.Category;
+import com.mushroom.expense.entity.SubCategory;
+import com.mushroom.expense.entity.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Outside a test transaction, so every repository call commits and runs in its own session
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ReferenceCacheTest {
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        entityManagerFactory.getCache().evictAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void entitiesAreServedFromTheCacheAndFollowUpdates() {
+        Category substrate = categoryRepository.save(category("Substrate"));
+        User manager = userRepository.save(new User("manager", "pass", "ROLE_MANAGER"));
+        // Identity inserts are not cached, the first read puts them
+        categoryRepository.findById(substrate.getId());
+        userRepository.findById(manager.getId());
+        statistics.clear();
+
+        assertEquals("Substrate", categoryRepository.findById(substrate.getId()).orElseThrow().getName());
+        assertEquals("manager", userRepository.findById(manager.getId()).orElseThrow().getUsername());
+        assertEquals(0, statistics.getEntityLoadCount());
+        assertEquals(2, statistics.getSecondLevelCacheHitCount());
+
+        substrate.setName("Casing");
+        categoryRepository.save(substrate);
+        statistics.clear();
+        assertEquals("Casing", categoryRepository.findById(substrate.getId()).orElseThrow().getName());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        categoryRepository.deleteById(substrate.getId());
+        assertTrue(categoryRepository.findById(substrate.getId()).isEmpty());
+    }
+
+    @Test
+    void findByCategoryIdUsesTheQueryCacheUntilSubCategoriesChange() {
+        Category substrate = categoryRepository.save(category("Substrate"));
+        subCategoryRepository.save(subCategory("Straw", substrate));
+
+        assertEquals(List.of("Straw"), names(subCategoryRepository.findByCategoryId(substrate.getId())));
+        statistics.clear();
+        assertEquals(List.of("Straw"), names(subCategoryRepository.findByCategoryId(substrate.getId())));
+        assertEquals(1, statistics.getQueryCacheHitCount());
+        assertEquals(0, statistics.getQueryExecutionCount());
+
+        subCategoryRepository.save(subCategory("Bran", substrate));
+        assertEquals(List.of("Bran", "Straw"), names(subCategoryRepository.findByCategoryId(substrate.getId())));
+        assertEquals(1, statistics.getQueryExecutionCount());
+    }
+
+    private static List<String> names(List<SubCategory> subCategories) {
+        return subCategories.stream().map(SubCategory::getName).sorted().toList();
+    }
+
+    private static Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return category;
+    }
+
+    private static SubCategory subCategory(String name, Category category) {
+        SubCategory subCategory = new SubCategory();
+        subCategory.setName(name);
+        subCategory.setCategory(category);
+        return subCategory;
+    }
+}
@@ -0,0 +1,23 @@
+package com.mushroom.expense.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.session.SessionRegistryImpl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSessionsTest {
+
+    @Test
+    void expireAll_EndsOnlyThatUsersSessions() {
+        SessionRegistryImpl registry = new SessionRegistryImpl();
+        registry.registerNewSession("a", new AppUserPrincipal(1L, "manager", null, "ROLE_MANAGER", true));
+        registry.registerNewSession("b", new AppUserPrincipal(1L, "manager", null, "ROLE_MANAGER", true));
+        registry.registerNewSession("c", new AppUserPrincipal(2L, "accountant", null, "ROLE_ACCOUNTANT", true));
+
+        new UserSessions(registry).expireAll(1L);
+
+        assertTrue(registry.getSessionInformation("a").isExpired());
+        assertTrue(registry.getSessionInformation("b").isExpired());
+        assertFalse(registry.getSessionInformation("c").isExpired());
+    }
+}
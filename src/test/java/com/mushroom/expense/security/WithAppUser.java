@@ -0,0 +1,22 @@
+package com.mushroom.expense.security;
+
+import org.springframework.security.test.context.support.WithSecurityContext;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Runs a test as an authenticated {@link AppUserPrincipal}, the way a real login would. */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.METHOD, ElementType.TYPE })
+@WithSecurityContext(factory = WithAppUserSecurityContextFactory.class)
+public @interface WithAppUser {
+
+    long id() default 1L;
+
+    String username() default "manager";
+
+    /** Without the {@code ROLE_} prefix, as with {@code @WithMockUser}. */
+    String role() default "MANAGER";
+}
@@ -0,0 +1,19 @@
+package com.mushroom.expense.security;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.context.support.WithSecurityContextFactory;
+
+class WithAppUserSecurityContextFactory implements WithSecurityContextFactory<WithAppUser> {
+
+    @Override
+    public SecurityContext createSecurityContext(WithAppUser annotation) {
+        AppUserPrincipal principal = new AppUserPrincipal(annotation.id(), annotation.username(), null,
+                "ROLE_" + annotation.role(), true);
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+        context.setAuthentication(UsernamePasswordAuthenticationToken.authenticated(principal, null,
+                principal.getAuthorities()));
+        return context;
+    }
+}
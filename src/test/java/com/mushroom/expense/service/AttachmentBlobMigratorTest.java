@@ -0,0 +1,167 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.ExpenseRollupRepository;
+import com.mushroom.expense.repository.FileDeletionRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Outside a test transaction, so old files are only deleted once the renames commit
+@DataJpaTest
+@Import({ AttachmentBlobMigrator.class, FileStorageService.class, ExpenseService.class, ExpenseRollupService.class,
+        ExpenseAnalyticsService.class, FileDeletionService.class, SimpleMeterRegistry.class, ExpenseFixtures.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AttachmentBlobMigratorTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.upload.dir", uploadDir::toString);
+        registry.add("app.upload.blob-migration.enabled", () -> "false");
+        // One name per chunk, so every run pages
+        registry.add("app.upload.blob-migration.chunk-size", () -> "1");
+        registry.add("app.upload.deletion.enabled", () -> "false");
+        registry.add("app.upload.deletion.grace", () -> "PT0S");
+    }
+
+    @Autowired
+    private AttachmentBlobMigrator migrator;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FileDeletionService fileDeletionService;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpenseAttachmentRepository expenseAttachmentRepository;
+
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+
+    @Autowired
+    private FileDeletionRepository fileDeletionRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    @MockBean
+    private ThumbnailService thumbnailService;
+
+    @MockBean
+    private ReceiptImageNormalizer receiptImageNormalizer;
+
+    private User manager;
+    private SubCategory straw;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        straw = fixtures.straw();
+    }
+
+    @AfterEach
+    void tearDown() {
+        expenseRepository.deleteAll();
+        fileDeletionRepository.deleteAll();
+        expenseRollupRepository.deleteAll();
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void duplicatesShareOneBlobThatOutlivesAllButTheLastReference() throws IOException {
+        // The same photo uploaded to two expenses under the old naming scheme
+        Files.writeString(uploadDir.resolve("1111_receipt.jpg"), "photo");
+        Files.writeString(uploadDir.resolve("2222_receipt.jpg"), "photo");
+        Expense first = expenseWithAttachment("1111_receipt.jpg");
+        Expense second = expenseWithAttachment("2222_receipt.jpg");
+
+        assertEquals(2, migrator.migrateAll());
+        fileDeletionService.processDue();
+
+        List<String> names = expenseAttachmentRepository.findDistinctFileNames();
+        assertEquals(1, names.size());
+        String blob = names.get(0);
+        assertTrue(FileStorageService.isContentAddressed(blob));
+        assertFalse(Files.exists(uploadDir.resolve("1111_receipt.jpg")));
+        assertFalse(Files.exists(uploadDir.resolve("2222_receipt.jpg")));
+        assertEquals(0, migrator.migrateAll());
+
+        expenseService.deleteExpense(first.getId());
+        fileDeletionService.processDue();
+        assertTrue(Files.exists(UploadLayout.shardedPath(uploadDir, blob)));
+        expenseService.deleteExpense(second.getId());
+        fileDeletionService.processDue();
+        assertFalse(Files.exists(UploadLayout.shardedPath(uploadDir, blob)));
+    }
+
+    @Test
+    void onlyNamesUnderTheOldSchemeAreRead() throws IOException {
+        String blob = fileStorageService.storeExisting(
+                Files.writeString(uploadDir.resolve("3333_invoice.pdf"), "invoice").getFileName().toString());
+        Files.writeString(uploadDir.resolve("4444_receipt.png"), "receipt");
+        Files.writeString(uploadDir.resolve("5555_photo.jpg"), "photo");
+        expenseWithAttachment(blob);
+        Expense withReceipt = expenseWithAttachment("4444_receipt.png");
+        withReceipt.setReceiptImage("5555_photo.jpg");
+        expenseRepository.save(withReceipt);
+
+        assertEquals(List.of("4444_receipt.png"),
+                expenseAttachmentRepository.findLegacyFileNamesAfter("", PageRequest.of(0, 10)));
+        assertEquals(List.of("5555_photo.jpg"),
+                expenseRepository.findLegacyReceiptImagesAfter("", PageRequest.of(0, 10)));
+
+        assertEquals(2, migrator.migrateAll());
+        assertTrue(expenseAttachmentRepository.findLegacyFileNamesAfter("", PageRequest.of(0, 10)).isEmpty());
+        assertTrue(expenseRepository.findLegacyReceiptImagesAfter("", PageRequest.of(0, 10)).isEmpty());
+    }
+
+    private Expense expenseWithAttachment(String fileName) {
+        Expense expense = ExpenseFixtures.newExpense(manager, straw, ExpenseStatus.DRAFT);
+        expense.getAttachments().add(new ExpenseAttachment(fileName, expense));
+        return expenseRepository.save(expense);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.config.CacheConfig;
+import com.mushroom.expense.entity.Category;
+import com.mushroom.expense.entity.SubCategory;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs outside a test transaction so that writes commit and their evictions fire
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@AutoConfigureCache(cacheProvider = CacheType.CAFFEINE)
+@Import({ CategoryService.class, CacheConfig.class })
+class CategoryServiceTest {
+
+    @Autowired
+    private CategoryService categoryService;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @AfterEach
+    void tearDown() {
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    void findAllCategories_IsCachedUntilACategoryChanges() {
+        Category spawn = categoryService.saveCategory(category("Spawn"));
+        List<Category> first = categoryService.findAllCategories();
+
+        assertSame(first, categoryService.findAllCategories());
+
+        categoryService.saveCategory(category("Packaging"));
+        List<Category> afterSave = categoryService.findAllCategories();
+        assertNotSame(first, afterSave);
+        assertEquals(first.size() + 1, afterSave.size());
+
+        categoryService.deleteCategory(categoryRepository.findAll().stream()
+                .filter(c -> c.getName().equals("Packaging")).findFirst().orElseThrow().getId());
+        assertEquals(first.size(), categoryService.findAllCategories().size());
+        assertTrue(categoryService.findAllCategories().stream().anyMatch(c -> c.getId().equals(spawn.getId())));
+    }
+
+    @Test
+    void findSubCategories_EvictsOldAndNewCategoryOnMove() {
+        Category substrate = categoryService.saveCategory(category("Substrate"));
+        Category spawn = categoryService.saveCategory(category("Spawn"));
+        SubCategory straw = categoryService.saveSubCategory(subCategory("Straw", substrate));
+
+        List<SubCategory> substrateSubs = categoryService.findSubCategoriesByCategoryId(substrate.getId());
+        assertSame(substrateSubs, categoryService.findSubCategoriesByCategoryId(substrate.getId()));
+        assertEquals("Substrate", substrateSubs.get(0).getCategory().getName());
+        assertTrue(categoryService.findSubCategoriesByCategoryId(spawn.getId()).isEmpty());
+
+        straw.setCategory(spawn);
+        categoryService.saveSubCategory(straw);
+
+        assertTrue(categoryService.findSubCategoriesByCategoryId(substrate.getId()).isEmpty());
+        assertEquals(List.of("Straw"), categoryService.findSubCategoriesByCategoryId(spawn.getId()).stream()
+                .map(SubCategory::getName).toList());
+
+        categoryService.deleteSubCategory(straw.getId());
+        assertTrue(categoryService.findSubCategoriesByCategoryId(spawn.getId()).isEmpty());
+    }
+
+    private static Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return category;
+    }
+
+    private static SubCategory subCategory(String name, Category category) {
+        SubCategory subCategory = new SubCategory();
+        subCategory.setName(name);
+        subCategory.setCategory(category);
+        return subCategory;
+    }
+}
@@ -0,0 +1,166 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.DashboardBucket;
+import com.mushroom.expense.dto.ExpenseSummary;
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(DashboardService.class)
+class DashboardServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    private User manager;
+    private User otherManager;
+    private Category category;
+    private SubCategory subCategory;
+
+    @BeforeEach
+    void setUp() {
+        manager = entityManager.persist(new User("manager", "pass", "ROLE_MANAGER"));
+        otherManager = entityManager.persist(new User("other", "pass", "ROLE_MANAGER"));
+
+        category = new Category();
+        category.setName("Raw Materials");
+        entityManager.persist(category);
+
+        subCategory = new SubCategory();
+        subCategory.setName("Compost");
+        subCategory.setCategory(category);
+        entityManager.persist(subCategory);
+
+        for (int day = 1; day <= 7; day++) {
+            persistExpense(manager, ExpenseStatus.DRAFT, LocalDate.of(2024, 1, day), "draft " + day);
+        }
+        persistExpense(manager, ExpenseStatus.QUERIES_RAISED, LocalDate.of(2024, 2, 1), "queried");
+        persistExpense(manager, ExpenseStatus.SUBMITTED, LocalDate.of(2024, 2, 2), "submitted");
+        persistExpense(otherManager, ExpenseStatus.SUBMITTED, LocalDate.of(2024, 2, 3), "other submitted");
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void loadBuckets_PagesAndCountsEveryBucket() {
+        Map<String, Page<Expense>> pages = dashboardService.loadBuckets(manager, List.of(
+                new DashboardBucket("myDrafts", List.of(ExpenseStatus.DRAFT, ExpenseStatus.QUERIES_RAISED), true, 1),
+                new DashboardBucket("returned", List.of(ExpenseStatus.QUERIES_RAISED), true, 0),
+                new DashboardBucket("pending", List.of(ExpenseStatus.SUBMITTED), true, 0),
+                new DashboardBucket("allSubmitted", List.of(ExpenseStatus.SUBMITTED), false, 0),
+                new DashboardBucket("approved", List.of(ExpenseStatus.APPROVED), true, 0)),
+                null, null, null, null, 5, Sort.by("date").descending());
+
+        Page<Expense> drafts = pages.get("myDrafts");
+        assertEquals(8, drafts.getTotalElements());
+        assertEquals(2, drafts.getTotalPages());
+        assertEquals(List.of("draft 3", "draft 2", "draft 1"),
+                drafts.getContent().stream().map(Expense::getDescription).toList());
+
+        assertEquals(1, pages.get("returned").getTotalElements());
+        assertEquals("queried", pages.get("returned").getContent().get(0).getDescription());
+        assertEquals(1, pages.get("pending").getTotalElements());
+        assertEquals(2, pages.get("allSubmitted").getTotalElements());
+        assertEquals(0, pages.get("approved").getTotalElements());
+        assertTrue(pages.get("approved").getContent().isEmpty());
+    }
+
+    @Test
+    void loadBuckets_KeepsTotalWhenPageIsPastTheEnd() {
+        Map<String, Page<Expense>> pages = dashboardService.loadBuckets(manager, List.of(
+                new DashboardBucket("myDrafts", List.of(ExpenseStatus.DRAFT), true, 4)),
+                null, null, null, null, 5, Sort.by("amount").ascending());
+
+        assertEquals(7, pages.get("myDrafts").getTotalElements());
+        assertTrue(pages.get("myDrafts").getContent().isEmpty());
+    }
+
+    @Test
+    void loadBuckets_AppliesFilters() {
+        Map<String, Page<Expense>> pages = dashboardService.loadBuckets(null, List.of(
+                new DashboardBucket("submittedExpenses", List.of(ExpenseStatus.SUBMITTED), false, 0)),
+                "OTHER", LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 28), category.getId(), 5,
+                Sort.by("date").descending());
+
+        Page<Expense> submitted = pages.get("submittedExpenses");
+        assertEquals(1, submitted.getTotalElements());
+        assertEquals("other", submitted.getContent().get(0).getUser().getUsername());
+    }
+
+    @Test
+    void loadBuckets_RanksByRelevance() {
+        persistExpense(manager, ExpenseStatus.APPROVED, LocalDate.of(2024, 3, 1), "invoice for compost bags");
+        persistExpense(manager, ExpenseStatus.APPROVED, LocalDate.of(2024, 3, 2), "more bags");
+        persistExpense(manager, ExpenseStatus.APPROVED, LocalDate.of(2024, 3, 3), "bags of spawn");
+        entityManager.flush();
+
+        Map<String, Page<Expense>> pages = dashboardService.loadBuckets(null, List.of(
+                new DashboardBucket("approvedExpenses", List.of(ExpenseStatus.APPROVED), false, 0)),
+                "Bags", null, null, null, 5, Sort.by("relevance").descending());
+
+        assertEquals(List.of("bags of spawn", "more bags", "invoice for compost bags"),
+                pages.get("approvedExpenses").getContent().stream().map(Expense::getDescription).toList());
+    }
+
+    @Test
+    void loadBucketSummaries_ProjectsListedFields() {
+        Expense queried = entityManager.getEntityManager()
+                .createQuery("select e from Expense e where e.description = 'queried'", Expense.class)
+                .getSingleResult();
+        entityManager.persist(new ExpenseAttachment("a.png", queried));
+        entityManager.persist(new ExpenseAttachment("b.png", queried));
+        entityManager.flush();
+        entityManager.clear();
+
+        Map<String, Page<ExpenseSummary>> pages = dashboardService.loadBucketSummaries(manager, List.of(
+                new DashboardBucket("returned", List.of(ExpenseStatus.QUERIES_RAISED), true, 0)),
+                null, null, null, null, 5, Sort.by("date").descending());
+
+        ExpenseSummary summary = pages.get("returned").getContent().get(0);
+        assertEquals(queried.getId(), summary.id());
+        assertEquals("Raw Materials", summary.categoryName());
+        assertEquals("Compost", summary.subCategoryName());
+        assertEquals("manager", summary.username());
+        assertEquals(2, summary.attachmentCount());
+    }
+
+    @Test
+    void loadBuckets_RejectsUnknownSortField() {
+        List<DashboardBucket> buckets = List.of(
+                new DashboardBucket("approved", List.of(ExpenseStatus.APPROVED), false, 0));
+        Sort sort = Sort.by("description");
+
+        assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> dashboardService.loadBuckets(null, buckets, null, null, null, null, 5, sort));
+    }
+
+    private void persistExpense(User owner, ExpenseStatus status, LocalDate date, String description) {
+        Expense expense = new Expense();
+        expense.setDescription(description);
+        expense.setAmount(10000L + date.getDayOfYear() * 100L);
+        expense.setDate(date);
+        expense.setPaymentMode(PaymentMode.CASH);
+        expense.setStatus(status);
+        expense.setUser(owner);
+        expense.setCategory(category);
+        expense.setSubCategory(subCategory);
+        entityManager.persist(expense);
+    }
+}
@@ -0,0 +1,93 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.ExpenseFact;
+import com.mushroom.expense.dto.SpendBucket;
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.service.ExpenseAnalyticsService.GroupBy;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseAnalyticsServiceTest {
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @InjectMocks
+    private ExpenseAnalyticsService expenseAnalyticsService;
+
+    @BeforeEach
+    void setUp() {
+        // 2024-03-04 is a Monday
+        when(expenseRepository.streamFactsByStatus(ExpenseStatus.APPROVED)).thenReturn(Stream.of(
+                new ExpenseFact(1L, LocalDate.of(2024, 3, 4), 10000, 1L, 10L, PaymentMode.CASH),
+                new ExpenseFact(2L, LocalDate.of(2024, 3, 10), 2050, 1L, 11L, PaymentMode.UPI),
+                new ExpenseFact(3L, LocalDate.of(2024, 3, 11), 725, 2L, 20L, PaymentMode.UPI),
+                new ExpenseFact(4L, LocalDate.of(2024, 4, 2), 5000, 1L, 10L, PaymentMode.CASH),
+                new ExpenseFact(5L, LocalDate.of(2024, 4, 3), 100, null, null, PaymentMode.CASH)));
+        expenseAnalyticsService.load();
+    }
+
+    @Test
+    void spend_GroupsAndFilters() {
+        assertEquals(4, expenseAnalyticsService.size());
+        assertEquals(List.of(bucket("2024-03-04", 2, "120.50"), bucket("2024-04-01", 1, "50.00")),
+                expenseAnalyticsService.spend(GroupBy.WEEK, null, null, 1L, null, null));
+        assertEquals(List.of(bucket("2024-03", 3, "127.75")),
+                expenseAnalyticsService.spend(GroupBy.MONTH, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31),
+                        null, null, null));
+        assertEquals(List.of(bucket("10", 2, "150.00"), bucket("11", 1, "20.50")),
+                expenseAnalyticsService.spend(GroupBy.SUBCATEGORY, null, null, 1L, null, null));
+        assertEquals(List.of(bucket("UPI", 2, "27.75")),
+                expenseAnalyticsService.spend(GroupBy.PAYMENT_MODE, null, null, null, null, PaymentMode.UPI));
+        assertTrue(expenseAnalyticsService.spend(GroupBy.CATEGORY, LocalDate.of(2025, 1, 1), null, null, null, null)
+                .isEmpty());
+    }
+
+    @Test
+    void recordChange_TracksApprovalAndRemoval() {
+        Expense expense = new Expense();
+        expense.setId(1L);
+        expense.setStatus(ExpenseStatus.QUERIES_RAISED);
+        expenseAnalyticsService.recordChange(expense);
+        expenseAnalyticsService.recordRemoval(3L);
+
+        assertEquals(List.of(bucket("1", 2, "70.50")),
+                expenseAnalyticsService.spend(GroupBy.CATEGORY, null, null, null, null, null));
+
+        Category category = new Category();
+        category.setId(2L);
+        SubCategory subCategory = new SubCategory();
+        subCategory.setId(21L);
+        Expense approved = new Expense();
+        approved.setId(6L);
+        approved.setStatus(ExpenseStatus.APPROVED);
+        approved.setDate(LocalDate.of(2024, 5, 1));
+        approved.setAmount(999);
+        approved.setCategory(category);
+        approved.setSubCategory(subCategory);
+        approved.setPaymentMode(PaymentMode.CARD);
+        expenseAnalyticsService.recordChange(approved);
+
+        assertEquals(List.of(bucket("1", 2, "70.50"), bucket("2", 1, "9.99")),
+                expenseAnalyticsService.spend(GroupBy.CATEGORY, null, null, null, null, null));
+        assertEquals(3, expenseAnalyticsService.size());
+    }
+
+    private static SpendBucket bucket(String key, long count, String amount) {
+        return new SpendBucket(key, count, new BigDecimal(amount));
+    }
+}
@@ -0,0 +1,106 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.CursorPage;
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExpenseJpaTest
+class ExpenseCursorPagingTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    private User manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        SubCategory electricity = fixtures.subCategory(fixtures.category("Utilities"), "Electricity");
+
+        // Two expenses share each date so the id tie-break is exercised
+        for (int i = 0; i < 12; i++) {
+            Expense expense = ExpenseFixtures.newExpense(manager, electricity, ExpenseStatus.APPROVED);
+            expense.setDescription("approved " + i);
+            expense.setAmount(1000L * (i % 4));
+            expense.setDate(LocalDate.of(2024, 3, 1).plusDays(i / 2));
+            entityManager.persist(expense);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void getExpenses_WalksForwardAndBackWithoutGapsOrRepeats() {
+        Sort sort = Sort.by("date").descending();
+
+        List<String> forward = new ArrayList<>();
+        List<String> cursors = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Expense> page = expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), null,
+                    null, null, null, cursor, 5, sort);
+            if (cursor == null) {
+                assertFalse(page.hasPrevious());
+            } else {
+                assertTrue(page.hasPrevious());
+            }
+            page.content().forEach(e -> forward.add(e.getDescription()));
+            cursors.add(page.previousCursor());
+            cursor = page.nextCursor();
+        } while (cursor != null);
+
+        assertEquals(12, forward.size());
+        assertEquals(12, forward.stream().distinct().count());
+        assertEquals("approved 11", forward.get(0));
+
+        // Step back from the last slice to the one before it
+        CursorPage<Expense> back = expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), null,
+                null, null, null, cursors.get(2), 5, sort);
+        assertEquals(forward.subList(5, 10), back.content().stream().map(Expense::getDescription).toList());
+        assertTrue(back.hasNext());
+        assertTrue(back.hasPrevious());
+    }
+
+    @Test
+    void getExpenses_SortsByAmountAscending() {
+        Sort sort = Sort.by("amount").ascending();
+
+        CursorPage<Expense> first = expenseService.getExpenses(manager, List.of(ExpenseStatus.APPROVED), null,
+                null, null, null, null, 4, sort);
+        CursorPage<Expense> second = expenseService.getExpenses(manager, List.of(ExpenseStatus.APPROVED), null,
+                null, null, null, first.nextCursor(), 4, sort);
+
+        assertTrue(first.content().stream().allMatch(e -> e.getAmount() == 0 || e.getAmount() == 1000));
+        assertEquals(0, first.content().get(0).getAmount());
+        assertTrue(second.content().stream().allMatch(e -> e.getAmount() >= 1000));
+    }
+
+    @Test
+    void getExpenses_RejectsCursorFromAnotherSort() {
+        CursorPage<Expense> page = expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), null,
+                null, null, null, null, 5, Sort.by("date").descending());
+        String cursor = page.nextCursor();
+        Sort other = Sort.by("amount").descending();
+
+        assertThrows(IllegalArgumentException.class, () -> expenseService.getExpenses(null,
+                List.of(ExpenseStatus.APPROVED), null, null, null, null, cursor, 5, other));
+        assertThrows(IllegalArgumentException.class, () -> expenseService.getExpenses(null,
+                List.of(ExpenseStatus.APPROVED), null, null, null, null, "not-a-cursor", 5, other));
+    }
+}
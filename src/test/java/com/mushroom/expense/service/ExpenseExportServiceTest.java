@@ -0,0 +1,85 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Sort;
+
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import(ExpenseExportService.class)
+class ExpenseExportServiceTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseExportService expenseExportService;
+
+    private User manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = entityManager.persist(new User("manager", "pass", "ROLE_MANAGER"));
+        User other = entityManager.persist(new User("other", "pass", "ROLE_MANAGER"));
+        Category category = new Category();
+        category.setName("Packaging");
+        entityManager.persist(category);
+        SubCategory subCategory = new SubCategory();
+        subCategory.setName("Boxes");
+        subCategory.setCategory(category);
+        entityManager.persist(subCategory);
+
+        for (int i = 0; i < 2500; i++) {
+            Expense expense = new Expense();
+            expense.setDescription(i == 0 ? "Boxes, \"large\"" : "Boxes " + i);
+            expense.setAmount(1001 + i * 100L);
+            expense.setDate(LocalDate.of(2023, 1, 1).plusDays(i % 365));
+            expense.setPaymentMode(PaymentMode.CASH);
+            expense.setStatus(i % 2 == 0 ? ExpenseStatus.APPROVED : ExpenseStatus.DRAFT);
+            expense.setUser(i < 2000 ? manager : other);
+            expense.setCategory(category);
+            expense.setSubCategory(subCategory);
+            entityManager.persist(expense);
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void writeCsv_StreamsEveryMatchingRowInOrder() throws Exception {
+        StringWriter out = new StringWriter();
+
+        long count = expenseExportService.writeCsv(manager, List.of(ExpenseStatus.APPROVED), null, null, null, null,
+                Sort.by("amount").ascending(), out);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals(1000, count);
+        assertEquals(1001, lines.length);
+        assertEquals(ExpenseExportService.CSV_HEADER, lines[0]);
+        assertTrue(lines[1].matches("\\d+,2023-01-01,Packaging,Boxes,10.01,APPROVED,\"Boxes, \"\"large\"\"\",manager"),
+                lines[1]);
+        assertTrue(lines[1000].contains(",2008.01,"), lines[1000]);
+    }
+
+    @Test
+    void writeCsv_AppliesSearch() throws Exception {
+        StringWriter out = new StringWriter();
+
+        long count = expenseExportService.writeCsv(null, List.of(ExpenseStatus.values()), "boxes 24", null, null,
+                null, Sort.by("relevance").descending(), out);
+
+        // "Boxes 24" and "Boxes 240".."Boxes 249" and "Boxes 2400".."Boxes 2499"
+        assertEquals(111, count);
+        assertEquals(112, out.toString().split("\n").length);
+    }
+}
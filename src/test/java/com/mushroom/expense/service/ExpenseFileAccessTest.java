@@ -0,0 +1,81 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExpenseJpaTest
+class ExpenseFileAccessTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    private User manager;
+    private User otherManager;
+    private User accountant;
+    private SubCategory straw;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        otherManager = fixtures.user("other", "ROLE_MANAGER");
+        accountant = fixtures.user("accountant", "ROLE_ACCOUNTANT");
+        straw = fixtures.straw();
+
+        persistExpense(ExpenseStatus.DRAFT, "draft.jpg", null);
+        persistExpense(ExpenseStatus.SUBMITTED, "submitted.pdf", "legacy.jpg");
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void canViewFile_OwnersSeeEverythingReviewersOnlyWhatTheyReview() {
+        assertTrue(expenseService.canViewFile("draft.jpg", manager));
+        assertTrue(expenseService.canViewFile("legacy.jpg", manager));
+        assertFalse(expenseService.canViewFile("draft.jpg", otherManager));
+        assertFalse(expenseService.canViewFile("submitted.pdf", otherManager));
+
+        assertFalse(expenseService.canViewFile("draft.jpg", accountant));
+        assertTrue(expenseService.canViewFile("submitted.pdf", accountant));
+        assertTrue(expenseService.canViewFile("legacy.jpg", accountant));
+        assertFalse(expenseService.canViewFile("unknown.jpg", accountant));
+    }
+
+    @Test
+    void canViewFile_SharedFileIsVisibleThroughAnyExpense() {
+        // The other manager uploaded the same bytes, so the draft's blob is theirs too
+        Expense shared = persistExpense(ExpenseStatus.DRAFT, "draft.jpg", null);
+        shared.setUser(otherManager);
+        entityManager.flush();
+
+        assertTrue(expenseService.canViewFile("draft.jpg", otherManager));
+        assertFalse(expenseService.canViewFile("draft.jpg", accountant));
+    }
+
+    @Test
+    void canViewFile_ReviewersStillSeeExpensesTheyRaisedQueriesOn() {
+        persistExpense(ExpenseStatus.QUERIES_RAISED, "queried.jpg", null);
+        entityManager.flush();
+
+        assertTrue(expenseService.canViewFile("queried.jpg", accountant));
+        assertTrue(expenseService.canViewFile("queried.jpg", manager));
+        assertFalse(expenseService.canViewFile("queried.jpg", otherManager));
+    }
+
+    private Expense persistExpense(ExpenseStatus status, String attachment, String receiptImage) {
+        Expense expense = ExpenseFixtures.newExpense(manager, straw, status);
+        expense.setReceiptImage(receiptImage);
+        expense.getAttachments().add(new ExpenseAttachment(attachment, expense));
+        return entityManager.persist(expense);
+    }
+}
@@ -0,0 +1,66 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+
+import java.time.LocalDate;
+
+/**
+ * Saves the users and categories expense tests start from, and builds
+ * expenses with whatever a test does not care about filled in.
+ */
+class ExpenseFixtures {
+
+    private final UserRepository userRepository;
+    private final CategoryRepository categoryRepository;
+    private final SubCategoryRepository subCategoryRepository;
+
+    ExpenseFixtures(UserRepository userRepository, CategoryRepository categoryRepository,
+            SubCategoryRepository subCategoryRepository) {
+        this.userRepository = userRepository;
+        this.categoryRepository = categoryRepository;
+        this.subCategoryRepository = subCategoryRepository;
+    }
+
+    User user(String username, String role) {
+        return userRepository.save(new User(username, "pass", role));
+    }
+
+    User manager() {
+        return user("manager", "ROLE_MANAGER");
+    }
+
+    Category category(String name) {
+        Category category = new Category();
+        category.setName(name);
+        return categoryRepository.save(category);
+    }
+
+    SubCategory subCategory(Category category, String name) {
+        SubCategory subCategory = new SubCategory();
+        subCategory.setName(name);
+        subCategory.setCategory(category);
+        return subCategoryRepository.save(subCategory);
+    }
+
+    /** Straw, in a new Substrate category. */
+    SubCategory straw() {
+        return subCategory(category("Substrate"), "Straw");
+    }
+
+    /** An unsaved expense of {@code owner}'s, filed under {@code subCategory}. */
+    static Expense newExpense(User owner, SubCategory subCategory, ExpenseStatus status) {
+        Expense expense = new Expense();
+        expense.setDescription("expense");
+        expense.setAmount(5000);
+        expense.setDate(LocalDate.of(2024, 1, 3));
+        expense.setPaymentMode(PaymentMode.CASH);
+        expense.setStatus(status);
+        expense.setUser(owner);
+        expense.setCategory(subCategory.getCategory());
+        expense.setSubCategory(subCategory);
+        return expense;
+    }
+}
@@ -0,0 +1,22 @@
+package com.mushroom.expense.service;
+
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A JPA slice with {@link ExpenseService} and the services it writes through,
+ * file storage and the deletion worker mocked, and {@link ExpenseFixtures}
+ * for the users and categories the tests start from. New dependencies of the
+ * service go into {@link ExpenseJpaTestConfiguration} only.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@DataJpaTest
+@Import(ExpenseJpaTestConfiguration.class)
+public @interface ExpenseJpaTest {
+}
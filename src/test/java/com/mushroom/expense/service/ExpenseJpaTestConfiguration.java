@@ -0,0 +1,29 @@
+package com.mushroom.expense.service;
+
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockReset;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import static org.mockito.Mockito.mock;
+
+/** What {@link ExpenseJpaTest} adds to the JPA slice. Mocks are reset after each test, as with {@code @MockBean}. */
+@TestConfiguration(proxyBeanMethods = false)
+@Import({ ExpenseService.class, ExpenseRollupService.class, ExpenseAnalyticsService.class, ExpenseFixtures.class })
+class ExpenseJpaTestConfiguration {
+
+    @Bean
+    FileStorageService fileStorageService() {
+        return mock(FileStorageService.class, MockReset.withSettings(MockReset.AFTER));
+    }
+
+    @Bean
+    ThumbnailService thumbnailService() {
+        return mock(ThumbnailService.class, MockReset.withSettings(MockReset.AFTER));
+    }
+
+    @Bean
+    FileDeletionService fileDeletionService() {
+        return mock(FileDeletionService.class, MockReset.withSettings(MockReset.AFTER));
+    }
+}
@@ -0,0 +1,117 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.CategorySpend;
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExpenseJpaTest
+class ExpenseRollupServiceTest {
+
+    private static final YearMonth JANUARY = YearMonth.of(2024, 1);
+    private static final YearMonth MARCH = YearMonth.of(2024, 3);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseRollupService expenseRollupService;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    private User manager;
+    private User accountant;
+    private SubCategory straw;
+    private SubCategory bran;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        accountant = fixtures.user("accountant", "ROLE_ACCOUNTANT");
+        straw = fixtures.straw();
+        bran = fixtures.subCategory(straw.getCategory(), "Bran");
+        entityManager.flush();
+    }
+
+    @Test
+    void rollupsFollowEveryChange() throws Exception {
+        Expense first = expenseService.saveExpense(newExpense(10000, 1800, straw, LocalDate.of(2024, 1, 5)),
+                null, null, false);
+        Expense second = expenseService.saveExpense(newExpense(5000, 0, straw, LocalDate.of(2024, 1, 20)),
+                null, null, false);
+        expenseService.saveExpense(newExpense(1000, 0, bran, LocalDate.of(2024, 2, 1)), null, null, false);
+        reload();
+
+        expenseService.updateExpenseStatus(first.getId(), ExpenseStatus.SUBMITTED);
+        expenseService.updateExpenseStatus(first.getId(), ExpenseStatus.APPROVED);
+        expenseService.updateExpenseStatus(second.getId(), ExpenseStatus.APPROVED);
+        reload();
+
+        // Edit an approved expense the way the controller does: load, modify, save
+        Expense edited = expenseService.findById(second.getId()).orElseThrow();
+        edited.setAmount(7000);
+        edited.setSubCategory(bran);
+        expenseService.saveExpense(edited, null, null, false);
+        reload();
+
+        List<CategorySpend> approved = expenseRollupService.getSpendByCategory(JANUARY, MARCH,
+                List.of(ExpenseStatus.APPROVED));
+        assertEquals(List.of(
+                new CategorySpend("Substrate", "Bran", 1, 7000, 0),
+                new CategorySpend("Substrate", "Straw", 1, 10000, 1800)), approved);
+
+        expenseService.addComment(first.getId(), accountant, "Which batch?");
+        expenseService.deleteExpense(second.getId());
+        reload();
+
+        assertEquals(List.of(new CategorySpend("Substrate", "Straw", 1, 10000, 1800)),
+                expenseRollupService.getSpendByCategory(JANUARY, MARCH, List.of(ExpenseStatus.QUERIES_RAISED)));
+        assertTrue(expenseRollupService.getSpendByCategory(JANUARY, MARCH, List.of(ExpenseStatus.APPROVED))
+                .isEmpty());
+        assertEquals(List.of(new CategorySpend("Substrate", "Bran", 1, 1000, 0)),
+                expenseRollupService.getSpendByCategory(JANUARY, MARCH, List.of(ExpenseStatus.DRAFT)));
+    }
+
+    @Test
+    void rebuildRecomputesFromExpenses() {
+        entityManager.persist(newExpense(2010, 500, straw, LocalDate.of(2024, 3, 31)));
+        entityManager.persist(newExpense(3001, 500, straw, LocalDate.of(2024, 3, 1)));
+        entityManager.flush();
+        assertTrue(expenseRollupService.getSpendByCategory(MARCH, MARCH, List.of(ExpenseStatus.DRAFT)).isEmpty());
+
+        expenseRollupService.rebuild();
+
+        List<CategorySpend> spend = expenseRollupService.getSpendByCategory(MARCH, MARCH,
+                List.of(ExpenseStatus.DRAFT));
+        assertEquals(1, spend.size());
+        assertEquals(2, spend.get(0).expenseCount());
+        assertEquals(5011, spend.get(0).amountTotal());
+        // 100.5 paise of tax rounds up and 150.05 down
+        assertEquals(251, spend.get(0).taxTotal());
+    }
+
+    private void reload() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Expense newExpense(long amount, int taxBasisPoints, SubCategory subCategory, LocalDate date) {
+        Expense expense = ExpenseFixtures.newExpense(manager, subCategory, ExpenseStatus.DRAFT);
+        expense.setAmount(amount);
+        expense.setTaxBasisPoints(taxBasisPoints);
+        expense.setDate(date);
+        return expense;
+    }
+}
@@ -0,0 +1,82 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExpenseJpaTest
+class ExpenseSearchTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    private User manager;
+    private Category substrate;
+    private SubCategory straw;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        straw = fixtures.straw();
+        substrate = straw.getCategory();
+        SubCategory diesel = fixtures.subCategory(fixtures.category("Energy"), "Diesel");
+
+        persistExpense("Straw bales for spring batch", null, ExpenseStatus.APPROVED, LocalDate.of(2024, 1, 1), straw);
+        persistExpense("Delivery of wheat straw", null, ExpenseStatus.APPROVED, LocalDate.of(2024, 1, 2), straw);
+        persistExpense("Spawn jars", "B-STRAW-7", ExpenseStatus.SUBMITTED, LocalDate.of(2024, 1, 3), straw);
+        persistExpense("Fuel", null, ExpenseStatus.APPROVED, LocalDate.of(2024, 1, 4), diesel);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    void getExpenses_MatchesDescriptionBatchAndCategoryNames() {
+        assertEquals(List.of("Delivery of wheat straw"), search(" WHEAT "));
+        assertEquals(List.of("Spawn jars"), search("b-straw"));
+        assertEquals(List.of("Spawn jars", "Delivery of wheat straw", "Straw bales for spring batch"),
+                search("substrate"));
+        assertEquals(List.of("Fuel"), search("diesel"));
+    }
+
+    @Test
+    void getExpenses_RanksByRelevanceWithinOtherFilters() {
+        Page<Expense> ranked = expenseService.getExpenses(null, List.of(ExpenseStatus.APPROVED), "straw",
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), substrate.getId(),
+                PageRequest.of(0, 10, Sort.by("relevance").descending()));
+
+        assertEquals(2, ranked.getTotalElements());
+        assertEquals(List.of("Straw bales for spring batch", "Delivery of wheat straw"),
+                ranked.getContent().stream().map(Expense::getDescription).toList());
+    }
+
+    private List<String> search(String keyword) {
+        return expenseService.getExpenses(null, List.of(ExpenseStatus.values()), keyword, null, null, null,
+                PageRequest.of(0, 10, Sort.by("date").descending()))
+                .getContent().stream().map(Expense::getDescription).toList();
+    }
+
+    private void persistExpense(String description, String batchId, ExpenseStatus status, LocalDate date,
+            SubCategory subCategory) {
+        Expense expense = ExpenseFixtures.newExpense(manager, subCategory, status);
+        expense.setDescription(description);
+        expense.setBatchId(batchId);
+        expense.setDate(date);
+        entityManager.persist(expense);
+    }
+}
@@ -10,6 +10,9 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.InOrder;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -20,6 +23,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,6 +41,21 @@ class ExpenseServiceTest {
     @Mock
     private FileStorageService fileStorageService;
 
+    @Mock
+    private ThumbnailService thumbnailService;
+
+    @Mock
+    private FileDeletionService fileDeletionService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ExpenseRollupService expenseRollupService;
+
+    @Mock
+    private ExpenseAnalyticsService expenseAnalyticsService;
+
     @InjectMocks
     private ExpenseService expenseService;
 
@@ -52,7 +71,7 @@ class ExpenseServiceTest {
         expense = new Expense();
         expense.setId(1L);
         expense.setDescription("Test Expense");
-        expense.setAmount(100.0);
+        expense.setAmount(10000);
         expense.setDate(LocalDate.now());
         expense.setStatus(ExpenseStatus.DRAFT);
         expense.setUser(user);
@@ -74,7 +93,7 @@ class ExpenseServiceTest {
     void saveExpense_WithAttachments() throws IOException {
         MultipartFile mockFile = mock(MultipartFile.class);
         when(mockFile.isEmpty()).thenReturn(false);
-        when(fileStorageService.storeFile(mockFile)).thenReturn("test-file.jpg");
+        when(fileStorageService.storeFiles(List.of(mockFile), false)).thenReturn(List.of("test-file.jpg"));
         when(expenseRepository.save(any(Expense.class))).thenReturn(expense);
 
         List<MultipartFile> files = List.of(mockFile);
@@ -82,7 +101,91 @@ class ExpenseServiceTest {
 
         assertEquals(1, savedExpense.getAttachments().size());
         assertEquals("test-file.jpg", savedExpense.getAttachments().get(0).getFileName());
-        verify(fileStorageService, times(1)).storeFile(mockFile);
+        verify(fileStorageService, times(1)).storeFiles(List.of(mockFile), false);
+        verify(thumbnailService, times(1)).generateLater(List.of("test-file.jpg"));
+    }
+
+    @Test
+    void saveExpense_CategoryKeepingOriginals_SkipsNormalization() throws IOException {
+        Category audited = new Category();
+        audited.setKeepOriginalReceipts(true);
+        expense.setCategory(audited);
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileStorageService.storeFiles(List.of(mockFile), true)).thenReturn(List.of("original.jpg"));
+        when(expenseRepository.save(any(Expense.class))).thenReturn(expense);
+
+        expenseService.saveExpense(expense, List.of(mockFile), null, false);
+
+        assertEquals("original.jpg", expense.getAttachments().get(0).getFileName());
+    }
+
+    @Test
+    void saveExpense_StoresFilesBeforeTheTransactionOpens() throws IOException {
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileStorageService.storeFiles(List.of(mockFile), false)).thenReturn(List.of("stored.jpg"));
+        when(expenseRepository.save(any(Expense.class))).thenReturn(expense);
+
+        expenseService.saveExpense(expense, List.of(mockFile), null, false);
+
+        InOrder inOrder = inOrder(fileStorageService, transactionManager, expenseRepository);
+        inOrder.verify(fileStorageService).storeFiles(List.of(mockFile), false);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(expenseRepository).save(expense);
+        verify(fileDeletionService, never()).scheduleDeletion(List.of("stored.jpg"));
+    }
+
+    @Test
+    void saveExpense_DatabaseFailure_DiscardsStoredFiles() throws IOException {
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileStorageService.storeFiles(List.of(mockFile), false)).thenReturn(List.of("stored.jpg"));
+        when(expenseRepository.save(any(Expense.class))).thenThrow(new IllegalStateException("database down"));
+
+        assertThrows(IllegalStateException.class,
+                () -> expenseService.saveExpense(expense, List.of(mockFile), null, false));
+
+        verify(transactionManager).rollback(any());
+        verify(fileDeletionService).scheduleDeletion(List.of("stored.jpg"));
+    }
+
+    @Test
+    void saveExpenseForm_LoadsTheEditedExpenseAfterStoringFiles() throws IOException {
+        expense.setVersion(3L);
+        expense.setStatus(ExpenseStatus.REJECTED);
+        Expense form = new Expense();
+        form.setId(1L);
+        form.setVersion(3L);
+        form.setDescription("Edited");
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileStorageService.storeFiles(List.of(mockFile), false)).thenReturn(List.of("stored.jpg"));
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+        when(expenseRepository.save(expense)).thenReturn(expense);
+
+        expenseService.saveExpenseForm(form, user, List.of(mockFile), null, false);
+
+        InOrder inOrder = inOrder(fileStorageService, transactionManager, expenseRepository);
+        inOrder.verify(fileStorageService).storeFiles(List.of(mockFile), false);
+        inOrder.verify(transactionManager).getTransaction(any());
+        inOrder.verify(expenseRepository).findById(1L);
+        assertEquals("Edited", expense.getDescription());
+        assertEquals(ExpenseStatus.DRAFT, expense.getStatus());
+        assertEquals("stored.jpg", expense.getAttachments().get(0).getFileName());
+    }
+
+    @Test
+    void saveExpenseForm_StaleVersion_DiscardsStoredFiles() throws IOException {
+        expense.setVersion(4L);
+        Expense form = new Expense();
+        form.setId(1L);
+        form.setVersion(3L);
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileStorageService.storeFiles(List.of(mockFile), false)).thenReturn(List.of("stored.jpg"));
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> expenseService.saveExpenseForm(form, user, List.of(mockFile), null, false));
+
+        verify(expenseRepository, never()).save(any());
+        verify(fileDeletionService).scheduleDeletion(List.of("stored.jpg"));
     }
 
     @Test
@@ -95,7 +198,9 @@ class ExpenseServiceTest {
 
         expenseService.deleteExpense(1L);
 
-        verify(fileStorageService, times(1)).deleteFile("test.jpg");
+        verify(fileDeletionService, times(1)).scheduleDeletion(argThat(names -> names.contains("test.jpg")));
+        verify(expenseRollupService, times(1)).recordRemoval(expense);
+        verify(expenseAnalyticsService, times(1)).recordRemoval(1L);
         verify(expenseRepository, times(1)).deleteById(1L);
     }
 
@@ -108,6 +213,34 @@ class ExpenseServiceTest {
 
         assertEquals(ExpenseStatus.APPROVED, updatedExpense.getStatus());
         verify(expenseRepository, times(1)).save(expense);
+        verify(expenseRollupService, times(1)).recordChange(expense);
+        verify(expenseAnalyticsService, times(1)).recordChange(expense);
+    }
+
+    @Test
+    void updateExpenseStatus_MovesTheVersionsOfBothStatuses() {
+        expense.setStatus(ExpenseStatus.SUBMITTED);
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+        when(expenseRepository.save(any(Expense.class))).thenReturn(expense);
+        long submitted = expenseService.getDataVersion(ExpenseStatus.SUBMITTED);
+        long approved = expenseService.getDataVersion(ExpenseStatus.APPROVED);
+        long rejected = expenseService.getDataVersion(ExpenseStatus.REJECTED);
+
+        expenseService.updateExpenseStatus(1L, ExpenseStatus.APPROVED);
+
+        assertEquals(submitted + 1, expenseService.getDataVersion(ExpenseStatus.SUBMITTED));
+        assertEquals(approved + 1, expenseService.getDataVersion(ExpenseStatus.APPROVED));
+        assertEquals(rejected, expenseService.getDataVersion(ExpenseStatus.REJECTED));
+    }
+
+    @Test
+    void updateExpenseStatus_StaleVersion_Throws() {
+        expense.setVersion(5L);
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> expenseService.updateExpenseStatus(1L, ExpenseStatus.APPROVED, 4L));
+        verify(expenseRepository, never()).save(any(Expense.class));
     }
 
     @Test
@@ -121,6 +254,17 @@ class ExpenseServiceTest {
         verify(expenseRepository, times(1)).save(expense);
     }
 
+    @Test
+    void rejectWithComment_StaleVersion_WritesNothing() {
+        expense.setVersion(5L);
+        when(expenseRepository.findById(1L)).thenReturn(Optional.of(expense));
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> expenseService.rejectWithComment(1L, user, "Wrong batch", 4L));
+        verify(expenseCommentRepository, never()).save(any(ExpenseComment.class));
+        verify(expenseRepository, never()).save(any(Expense.class));
+    }
+
     @Test
     void deleteAttachment_Success() {
         ExpenseAttachment attachment = new ExpenseAttachment("test.jpg", expense);
@@ -131,7 +275,7 @@ class ExpenseServiceTest {
 
         expenseService.deleteAttachment(10L);
 
-        verify(fileStorageService, times(1)).deleteFile("test.jpg");
+        verify(fileDeletionService, times(1)).scheduleDeletion(argThat(names -> names.contains("test.jpg")));
         verify(expenseRepository, times(1)).save(expense);
         assertFalse(expense.getAttachments().contains(attachment));
     }
@@ -162,7 +306,7 @@ class ExpenseServiceTest {
         List<Long> deleteIds = List.of(1L);
         expenseService.saveExpense(expense, null, deleteIds, false);
 
-        verify(fileStorageService, times(1)).deleteFile("file1.jpg");
+        verify(fileDeletionService, times(1)).scheduleDeletion(argThat(names -> names.contains("file1.jpg")));
         verify(expenseAttachmentRepository, times(1)).delete(attachment1);
         assertEquals(1, expense.getAttachments().size());
         assertEquals("file2.jpg", expense.getAttachments().get(0).getFileName());
@@ -175,7 +319,7 @@ class ExpenseServiceTest {
 
         expenseService.saveExpense(expense, null, null, true);
 
-        verify(fileStorageService, times(1)).deleteFile("primary.jpg");
+        verify(fileDeletionService, times(1)).scheduleDeletion(argThat(names -> names.contains("primary.jpg")));
         assertNull(expense.getReceiptImage());
     }
 
@@ -207,6 +351,6 @@ class ExpenseServiceTest {
         when(expenseAttachmentRepository.findById(99L)).thenReturn(Optional.empty());
 
         assertDoesNotThrow(() -> expenseService.deleteAttachment(99L));
-        verify(fileStorageService, never()).deleteFile(anyString());
+        verify(fileDeletionService, never()).scheduleDeletion(any());
     }
 }
@@ -0,0 +1,151 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.dto.ExpenseRevision;
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.ExpenseAttachmentRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.ExpenseRollupRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.when;
+
+// Outside a test transaction, so every service call commits and versions are written
+@ExpenseJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ExpenseVersioningTest {
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpenseAttachmentRepository expenseAttachmentRepository;
+
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ExpenseFixtures fixtures;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    private User manager;
+    private SubCategory straw;
+
+    @BeforeEach
+    void setUp() {
+        manager = fixtures.manager();
+        straw = fixtures.straw();
+    }
+
+    @AfterEach
+    void tearDown() {
+        expenseRepository.deleteAll();
+        expenseRollupRepository.deleteAll();
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void staleStatusChangeIsRefused() throws Exception {
+        Long id = expenseService.saveExpense(newExpense(), null, null, false).getId();
+        long seen = revision(id).version();
+
+        expenseService.updateExpenseStatus(id, ExpenseStatus.SUBMITTED, seen);
+        assertEquals(seen + 1, revision(id).version());
+
+        // A second reviewer still looking at the page from before
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> expenseService.updateExpenseStatus(id, ExpenseStatus.APPROVED, seen));
+        assertEquals(ExpenseStatus.SUBMITTED, expenseRepository.findById(id).orElseThrow().getStatus());
+    }
+
+    @Test
+    void staleRejectionWithCommentIsRefusedWhole() throws Exception {
+        Long id = expenseService.saveExpense(newExpense(), null, null, false).getId();
+        long seen = revision(id).version();
+        expenseService.updateExpenseStatus(id, ExpenseStatus.SUBMITTED, seen);
+
+        // Rejected from the page shown before the expense was submitted
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> expenseService.rejectWithComment(id, manager, "Wrong batch", seen));
+        assertEquals(ExpenseStatus.SUBMITTED, expenseRepository.findById(id).orElseThrow().getStatus());
+        assertEquals(0, revision(id).commentCount());
+
+        expenseService.rejectWithComment(id, manager, "Wrong batch", revision(id).version());
+        assertEquals(ExpenseStatus.REJECTED, expenseRepository.findById(id).orElseThrow().getStatus());
+        assertEquals(1, revision(id).commentCount());
+    }
+
+    @Test
+    void revisionFollowsAttachmentsAndComments() throws Exception {
+        when(fileStorageService.storeFiles(any(), anyBoolean())).thenReturn(List.of("receipt.png"));
+        Long id = expenseService.saveExpense(newExpense(), null, null, false).getId();
+        ExpenseRevision created = revision(id);
+
+        // Loaded and saved in one persistence context, as the edit form's request does
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                expenseService.saveExpense(expenseRepository.findById(id).orElseThrow(),
+                        List.of(new MockMultipartFile("receiptFiles", "r.png", "image/png", new byte[] { 1 })),
+                        null, false, created.version());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        ExpenseRevision attached = revision(id);
+        assertTrue(attached.version() > created.version());
+
+        Long attachmentId = expenseAttachmentRepository.findAll().get(0).getId();
+        expenseService.deleteAttachment(attachmentId);
+        ExpenseRevision detached = revision(id);
+        assertTrue(detached.version() > attached.version());
+
+        expenseService.addComment(id, manager, "Which batch?");
+        expenseService.addComment(id, manager, "Batch 7");
+        assertEquals(2, revision(id).commentCount());
+    }
+
+    private ExpenseRevision revision(Long id) {
+        return expenseService.findRevision(id).orElseThrow();
+    }
+
+    private Expense newExpense() {
+        return ExpenseFixtures.newExpense(manager, straw, ExpenseStatus.DRAFT);
+    }
+}
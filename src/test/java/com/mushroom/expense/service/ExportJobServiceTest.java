@@ -0,0 +1,161 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExportJobServiceTest {
+
+    @Mock
+    private ExpenseExportService expenseExportService;
+
+    @TempDir
+    Path tempDir;
+
+    private ExportJobService exportJobService;
+    private User accountant;
+
+    @BeforeEach
+    void setUp() {
+        exportJobService = new ExportJobService(expenseExportService, tempDir.toString(), 1, 1, Duration.ofHours(1),
+                Duration.ofHours(1));
+        accountant = new User("accountant", "pass", "ROLE_ACCOUNTANT");
+    }
+
+    @AfterEach
+    void tearDown() {
+        exportJobService.shutdown();
+    }
+
+    @Test
+    void submit_WritesGzippedFileAndReportsRows() throws Exception {
+        when(expenseExportService.writeCsvFor(eq(accountant), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    Writer writer = invocation.getArgument(6);
+                    LongConsumer progress = invocation.getArgument(7);
+                    writer.write("ID\n1\n2\n");
+                    progress.accept(2);
+                    return 2L;
+                });
+
+        ExportJob job = exportJobService.submit(accountant, null, null, null, null, Sort.by("date"), true);
+        awaitFinished(job);
+
+        assertEquals(ExportJob.Status.COMPLETED, job.getStatus());
+        assertEquals(2, job.getRowsWritten());
+        assertEquals("expenses.csv.gz", job.getDownloadName());
+        assertTrue(job.getFile().startsWith(tempDir.resolve("exports")));
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(job.getFile()))) {
+            assertEquals("ID\n1\n2\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertTrue(exportJobService.findJob(job.getId(), "accountant").isPresent());
+        assertTrue(exportJobService.findJob(job.getId(), "someone-else").isEmpty());
+    }
+
+    @Test
+    void submit_FailsFastWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(expenseExportService.writeCsvFor(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    release.await(5, TimeUnit.SECONDS);
+                    return 0L;
+                });
+
+        ExportJob running = exportJobService.submit(accountant, null, null, null, null, Sort.by("date"), false);
+        ExportJob queued = exportJobService.submit(accountant, null, null, null, null, Sort.by("date"), false);
+        ExportJob rejected = exportJobService.submit(accountant, null, null, null, null, Sort.by("date"), false);
+
+        assertEquals(ExportJob.Status.FAILED, rejected.getStatus());
+        assertNotNull(rejected.getErrorMessage());
+        release.countDown();
+        awaitFinished(running);
+        awaitFinished(queued);
+        assertEquals(ExportJob.Status.COMPLETED, queued.getStatus());
+    }
+
+    @Test
+    void submit_MarksJobFailedAndLeavesNoPartialFile() throws Exception {
+        when(expenseExportService.writeCsvFor(any(), any(), any(), any(), any(), any(), any(), any()))
+                .thenThrow(new IllegalArgumentException("Unsupported sort field: description"));
+
+        ExportJob job = exportJobService.submit(accountant, null, null, null, null, Sort.by("description"), false);
+        awaitFinished(job);
+
+        assertEquals(ExportJob.Status.FAILED, job.getStatus());
+        assertTrue(job.getErrorMessage().contains("Unsupported sort field"));
+        try (var files = Files.list(tempDir.resolve("exports"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void start_PurgesExpiredExportsWithoutWaitingForAnotherSubmit() throws Exception {
+        exportJobService.shutdown();
+        exportJobService = new ExportJobService(expenseExportService, tempDir.toString(), 1, 1, Duration.ZERO,
+                Duration.ofMillis(20));
+        when(expenseExportService.writeCsvFor(any(), any(), any(), any(), any(), any(), any(), any())).thenReturn(0L);
+
+        ExportJob job = exportJobService.submit(accountant, null, null, null, null, Sort.by("date"), false);
+        awaitFinished(job);
+        assertTrue(Files.exists(job.getFile()));
+        exportJobService.start();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (exportJobService.findJob(job.getId(), "accountant").isPresent() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(exportJobService.findJob(job.getId(), "accountant").isEmpty());
+        assertFalse(Files.exists(job.getFile()));
+    }
+
+    @Test
+    void purgeExpired_DeletesStaleFilesNoJobKnowsOf() throws Exception {
+        Path exports = tempDir.resolve("exports");
+        FileTime longAgo = FileTime.from(Instant.now().minus(Duration.ofHours(2)));
+        // As left by a restart, and by an export interrupted on shutdown
+        Path finished = Files.writeString(exports.resolve("before-restart.csv.gz"), "ID\n1\n");
+        Path partial = Files.writeString(exports.resolve("interrupted.part"), "ID\n");
+        Files.setLastModifiedTime(finished, longAgo);
+        Files.setLastModifiedTime(partial, longAgo);
+        Path recent = Files.writeString(exports.resolve("still-downloading.csv"), "ID\n1\n");
+
+        exportJobService.purgeExpired();
+
+        assertFalse(Files.exists(finished));
+        assertFalse(Files.exists(partial));
+        assertTrue(Files.exists(recent));
+    }
+
+    private static void awaitFinished(ExportJob job) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!job.isFinished() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(job.isFinished(), "export did not finish");
+    }
+}
@@ -0,0 +1,180 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.FileDeletionRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.verify;
+
+// Outside a test transaction, so the worker sees what scheduleDeletion committed
+@DataJpaTest
+@Import({ FileDeletionService.class, FileStorageService.class, SimpleMeterRegistry.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class FileDeletionServiceTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.upload.dir", uploadDir::toString);
+        registry.add("app.upload.deletion.enabled", () -> "false");
+        registry.add("app.upload.deletion.grace", () -> "PT0S");
+        registry.add("app.upload.deletion.retry-delay", () -> "PT1M");
+    }
+
+    @Autowired
+    private FileDeletionService fileDeletionService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private FileDeletionRepository fileDeletionRepository;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @MockBean
+    private ThumbnailService thumbnailService;
+
+    @MockBean
+    private ReceiptImageNormalizer receiptImageNormalizer;
+
+    @AfterEach
+    void tearDown() {
+        fileDeletionRepository.deleteAll();
+        expenseRepository.deleteAll();
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void deletesUnreferencedFilesAndKeepsSharedOnes() throws IOException {
+        Path orphan = storedFile("aaaa-orphan.jpg");
+        Path shared = storedFile("bbbb-shared.jpg");
+        expenseWithAttachment("bbbb-shared.jpg");
+
+        fileDeletionService.scheduleDeletion(List.of("aaaa-orphan.jpg", "bbbb-shared.jpg", "aaaa-orphan.jpg"));
+        assertEquals(2, fileDeletionRepository.count());
+
+        assertEquals(2, fileDeletionService.processDue());
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(shared));
+        verify(thumbnailService).delete("aaaa-orphan.jpg");
+        assertEquals(0, fileDeletionRepository.count());
+        assertEquals(1.0, outcomes("deleted"));
+        assertEquals(1.0, outcomes("kept"));
+        assertEquals(0, fileDeletionService.processDue());
+    }
+
+    @Test
+    void fileStoredAgainMeanwhileIsLeftForALaterRound() throws IOException {
+        Path file = storedFile("cccc-again.jpg");
+        // As FileStorageService leaves a blob that was just uploaded again
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plus(Duration.ofHours(1))));
+
+        fileDeletionService.scheduleDeletion(List.of("cccc-again.jpg"));
+        assertEquals(1, fileDeletionService.processDue());
+
+        assertTrue(Files.exists(file));
+        FileDeletion deletion = fileDeletionRepository.findAll().get(0);
+        assertEquals(0, deletion.getAttempts());
+        assertTrue(deletion.getNextAttemptAt().isAfter(LocalDateTime.now()));
+        assertEquals(0, fileDeletionService.processDue());
+    }
+
+    @Test
+    void failedDeletionIsRetriedWithBackoff() throws IOException {
+        // A directory that is not empty cannot be deleted like a file
+        Path stuck = fileStorageService.locate("dddd-stuck.jpg");
+        Files.createDirectories(stuck.resolve("inner"));
+        Files.setLastModifiedTime(stuck, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        fileDeletionService.scheduleDeletion(List.of("dddd-stuck.jpg"));
+        assertEquals(1, fileDeletionService.processDue());
+
+        assertTrue(Files.exists(stuck));
+        FileDeletion deletion = fileDeletionRepository.findAll().get(0);
+        assertEquals(1, deletion.getAttempts());
+        assertNotNull(deletion.getLastError());
+        assertTrue(deletion.getNextAttemptAt().isAfter(LocalDateTime.now().plusSeconds(30)));
+        assertEquals(1.0, outcomes("retried"));
+        assertEquals(0, fileDeletionService.processDue());
+    }
+
+    private double outcomes(String outcome) {
+        return meterRegistry.get("file.deletions").tag("outcome", outcome).counter().count();
+    }
+
+    private Path storedFile(String fileName) throws IOException {
+        Path path = UploadLayout.shardedPath(uploadDir, fileName);
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, "receipt");
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        return path;
+    }
+
+    private void expenseWithAttachment(String fileName) {
+        User manager = userRepository.save(new User("manager", "pass", "ROLE_MANAGER"));
+        Category substrate = new Category();
+        substrate.setName("Substrate");
+        substrate = categoryRepository.save(substrate);
+        SubCategory straw = new SubCategory();
+        straw.setName("Straw");
+        straw.setCategory(substrate);
+        straw = subCategoryRepository.save(straw);
+
+        Expense expense = new Expense();
+        expense.setDescription("expense");
+        expense.setAmount(10000);
+        expense.setDate(LocalDate.of(2024, 1, 5));
+        expense.setPaymentMode(PaymentMode.UPI);
+        expense.setStatus(ExpenseStatus.DRAFT);
+        expense.setUser(manager);
+        expense.setCategory(substrate);
+        expense.setSubCategory(straw);
+        expense.getAttachments().add(new ExpenseAttachment(fileName, expense));
+        expenseRepository.save(expense);
+    }
+}
@@ -1,15 +1,31 @@
 package com.mushroom.expense.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
 class FileStorageServiceTest {
 
@@ -20,7 +36,8 @@ class FileStorageServiceTest {
 
     @BeforeEach
     void setUp() {
-        fileStorageService = new FileStorageService(tempDir.toString());
+        fileStorageService = new FileStorageService(tempDir.toString(),
+                new ReceiptImageNormalizer(true, 100, 0.8f, 2, new SimpleMeterRegistry()));
     }
 
     @Test
@@ -34,8 +51,113 @@ class FileStorageServiceTest {
         String fileName = fileStorageService.storeFile(file);
 
         assertNotNull(fileName);
-        assertTrue(fileName.contains("test.txt"));
-        assertTrue(Files.exists(tempDir.resolve(fileName)));
+        assertTrue(FileStorageService.isContentAddressed(fileName));
+        assertTrue(fileName.endsWith(".txt"));
+        assertTrue(Files.exists(fileStorageService.locate(fileName)));
+    }
+
+    @Test
+    void storeFile_SameContentIsStoredOnce() throws IOException {
+        String first = fileStorageService.storeFile(
+                new MockMultipartFile("file", "receipt.JPG", "image/jpeg", "same receipt".getBytes()));
+        String second = fileStorageService.storeFile(
+                new MockMultipartFile("file", "again.jpg", "image/jpeg", "same receipt".getBytes()));
+        String other = fileStorageService.storeFile(
+                new MockMultipartFile("file", "receipt.jpg", "image/jpeg", "other receipt".getBytes()));
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        try (var stored = Files.walk(tempDir)) {
+            assertEquals(2, stored.filter(Files::isRegularFile).count());
+        }
+        try (var staged = Files.list(tempDir.resolve(FileStorageService.INCOMING_DIR))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void storeFiles_KeepOriginals_StoresTheBytesAsUploaded() throws IOException {
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+        MockMultipartFile photo = new MockMultipartFile("file", "receipt.jpg", "image/jpeg", jpeg.toByteArray());
+
+        String kept = fileStorageService.storeFiles(List.of(photo), true).get(0);
+        String normalized = fileStorageService.storeFiles(List.of(photo), false).get(0);
+
+        assertArrayEquals(jpeg.toByteArray(), Files.readAllBytes(fileStorageService.locate(kept)));
+        assertEquals(100, ImageIO.read(fileStorageService.locate(normalized).toFile()).getWidth());
+    }
+
+    @Test
+    void storeFiles_StoresEveryPartInOrder() throws IOException {
+        List<MultipartFile> parts = List.of(
+                new MockMultipartFile("file", "one.pdf", "application/pdf", "first".getBytes()),
+                new MockMultipartFile("file", "two.pdf", "application/pdf", "second".getBytes()),
+                new MockMultipartFile("file", "three.txt", "text/plain", "third".getBytes()));
+
+        List<String> names = fileStorageService.storeFiles(parts, false);
+
+        assertEquals(3, names.size());
+        assertEquals("first", Files.readString(fileStorageService.locate(names.get(0))));
+        assertEquals("second", Files.readString(fileStorageService.locate(names.get(1))));
+        assertEquals("third", Files.readString(fileStorageService.locate(names.get(2))));
+    }
+
+    @Test
+    void storeFiles_OnePartFailing_LeavesNothingStaged() throws IOException {
+        MultipartFile broken = mock(MultipartFile.class);
+        when(broken.getOriginalFilename()).thenReturn("broken.pdf");
+        doThrow(new IOException("client went away")).when(broken).transferTo(any(File.class));
+        List<MultipartFile> parts = List.of(
+                new MockMultipartFile("file", "one.pdf", "application/pdf", "first".getBytes()), broken);
+
+        assertThrows(RuntimeException.class, () -> fileStorageService.storeFiles(parts, false));
+        try (var staged = Files.list(tempDir.resolve(FileStorageService.INCOMING_DIR))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void storeFiles_UncheckedFailure_LeavesNothingStaged() throws IOException {
+        ReceiptImageNormalizer normalizer = mock(ReceiptImageNormalizer.class);
+        when(normalizer.normalizeAll(any())).thenThrow(new IllegalStateException("normalizer broke"));
+        fileStorageService = new FileStorageService(tempDir.toString(), normalizer);
+        List<MultipartFile> parts = List.of(
+                new MockMultipartFile("file", "one.jpg", "image/jpeg", "first".getBytes()),
+                new MockMultipartFile("file", "two.jpg", "image/jpeg", "second".getBytes()));
+
+        assertThrows(IllegalStateException.class, () -> fileStorageService.storeFiles(parts, false));
+        try (var staged = Files.list(tempDir.resolve(FileStorageService.INCOMING_DIR))) {
+            assertEquals(0, staged.count());
+        }
+    }
+
+    @Test
+    void storeExisting_KeepsTheOldFileAlongsideItsBlob() throws IOException {
+        Files.writeString(tempDir.resolve("0b1c_receipt.png"), "legacy receipt");
+        String uploaded = fileStorageService.storeFile(
+                new MockMultipartFile("file", "receipt.png", "image/png", "legacy receipt".getBytes()));
+
+        assertEquals(uploaded, fileStorageService.storeExisting("0b1c_receipt.png"));
+        assertTrue(Files.exists(tempDir.resolve("0b1c_receipt.png")));
+        assertThrows(IllegalArgumentException.class, () -> fileStorageService.storeExisting("../outside.png"));
+    }
+
+    @Test
+    void storeFile_MovesTheSpooledPartWithoutReadingIt() throws IOException {
+        // As Tomcat does for a part spooled to the incoming dir
+        Path spooled = Files.writeString(tempDir.resolve(FileStorageService.INCOMING_DIR).resolve("upload_1.tmp"),
+                "receipt");
+        MultipartFile part = mock(MultipartFile.class);
+        when(part.getOriginalFilename()).thenReturn("receipt.jpg");
+        doAnswer(invocation -> Files.move(spooled, invocation.getArgument(0, File.class).toPath()))
+                .when(part).transferTo(any(File.class));
+
+        String fileName = fileStorageService.storeFile(part);
+
+        assertEquals("receipt", Files.readString(fileStorageService.locate(fileName)));
+        assertFalse(Files.exists(spooled));
+        verify(part, never()).getInputStream();
     }
 
     @Test
@@ -61,6 +183,54 @@ class FileStorageServiceTest {
         assertFalse(Files.exists(filePath));
     }
 
+    @Test
+    void deleteFileUnlessModifiedAfter_KeepsFilesStoredSinceTheCutoff() throws IOException {
+        String name = fileStorageService.storeFile(
+                new MockMultipartFile("file", "receipt.pdf", "application/pdf", "receipt".getBytes()));
+        Path blob = fileStorageService.locate(name);
+        Files.setLastModifiedTime(blob, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+
+        assertNotNull(fileStorageService.deleteFileUnlessModifiedAfter(name, Instant.now().minus(Duration.ofHours(2))));
+        assertTrue(Files.exists(blob));
+        assertNull(fileStorageService.deleteFileUnlessModifiedAfter(name, Instant.now().minus(Duration.ofMinutes(30))));
+        assertFalse(Files.exists(blob));
+    }
+
+    @Test
+    void deleteFileUnlessModifiedAfter_RacingAnUploadOfTheSameBytes_NeverLosesTheUpload() throws Exception {
+        byte[] receipt = "shared receipt".getBytes();
+        String name = fileStorageService.storeFile(new MockMultipartFile("file", "receipt.pdf", "application/pdf", receipt));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 300; round++) {
+                // Long abandoned, as far as the deletion worker can tell
+                Path blob = fileStorageService.locate(name);
+                if (Files.exists(blob)) {
+                    Files.setLastModifiedTime(blob, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+                }
+                CyclicBarrier start = new CyclicBarrier(2);
+                Future<String> upload = executor.submit(() -> {
+                    start.await();
+                    return fileStorageService.storeFile(
+                            new MockMultipartFile("file", "again.pdf", "application/pdf", receipt));
+                });
+                Future<Instant> deletion = executor.submit(() -> {
+                    start.await();
+                    return fileStorageService.deleteFileUnlessModifiedAfter(name,
+                            Instant.now().minus(Duration.ofMinutes(10)));
+                });
+                assertEquals(name, upload.get());
+                deletion.get();
+
+                // Either the upload refreshed the blob and the deletion kept it, or the deletion
+                // went first and the upload stored it anew; the new reference has its bytes
+                assertTrue(Files.exists(fileStorageService.locate(name)), "lost in round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     @Test
     void storeFile_EmptyFile() {
         MockMultipartFile file = new MockMultipartFile(
@@ -0,0 +1,168 @@
+package com.mushroom.expense.service;
+
+import com.mushroom.expense.entity.*;
+import com.mushroom.expense.repository.CategoryRepository;
+import com.mushroom.expense.repository.ExpenseRepository;
+import com.mushroom.expense.repository.SubCategoryRepository;
+import com.mushroom.expense.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ OrphanFileCollector.class, SimpleMeterRegistry.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrphanFileCollectorTest {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadProperties(DynamicPropertyRegistry registry) {
+        registry.add("app.upload.dir", uploadDir::toString);
+        registry.add("app.upload.gc.enabled", () -> "false");
+        registry.add("app.upload.gc.grace", () -> "PT1H");
+        registry.add("app.upload.gc.retention", () -> "P7D");
+        // Small enough that the references are read in several chunks
+        registry.add("app.upload.gc.chunk-size", () -> "2");
+    }
+
+    @Autowired
+    private OrphanFileCollector collector;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private SubCategoryRepository subCategoryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void tearDown() {
+        expenseRepository.deleteAll();
+        subCategoryRepository.deleteAll();
+        categoryRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void quarantinesOldOrphansAndPurgesThemAfterTheRetention() throws IOException {
+        expenseReferring("aaaa1.jpg", "bbbb2.jpg", "cccc3.pdf", "1111_legacy.jpg");
+        Path attached = oldFile(UploadLayout.shardedPath(uploadDir, "aaaa1.jpg"), "attached");
+        Path attachedPreview = oldFile(thumbnail("aaaa1.jpg"), "preview");
+        Path legacy = oldFile(uploadDir.resolve("1111_legacy.jpg"), "legacy");
+        Path orphan = oldFile(UploadLayout.shardedPath(uploadDir, "dddd4.jpg"), "orphan");
+        Path orphanPreview = oldFile(thumbnail("dddd4.jpg"), "orphan preview");
+        Path flatOrphan = oldFile(uploadDir.resolve("2222_gone.pdf"), "flat orphan");
+        Path recent = UploadLayout.shardedPath(uploadDir, "eeee5.jpg");
+        Files.createDirectories(recent.getParent());
+        Files.writeString(recent, "still uploading");
+        Path export = oldFile(uploadDir.resolve("exports").resolve("job.csv"), "export");
+        Path spooled = oldFile(uploadDir.resolve(FileStorageService.INCOMING_DIR).resolve("upload.part"), "part");
+
+        OrphanFileCollector.Report report = collector.collect();
+
+        assertEquals(3, report.quarantined());
+        assertEquals("orphan".length() + "orphan preview".length() + "flat orphan".length(),
+                report.quarantinedBytes());
+        assertEquals(0, report.purged());
+        for (Path kept : new Path[] { attached, attachedPreview, legacy, recent, export, spooled }) {
+            assertTrue(Files.exists(kept), kept.toString());
+        }
+        Path quarantine = uploadDir.resolve(OrphanFileCollector.QUARANTINE_DIR);
+        assertFalse(Files.exists(orphan));
+        assertEquals("orphan", Files.readString(quarantine.resolve(uploadDir.relativize(orphan))));
+        assertFalse(Files.exists(orphanPreview));
+        assertTrue(Files.exists(quarantine.resolve(uploadDir.relativize(orphanPreview))));
+        assertFalse(Files.exists(flatOrphan));
+
+        assertEquals(0, collector.collect().purged());
+        try (Stream<Path> quarantined = Files.walk(quarantine)) {
+            quarantined.filter(Files::isRegularFile).forEach(file -> age(file, Duration.ofDays(8)));
+        }
+        report = collector.collect();
+
+        assertEquals(0, report.quarantined());
+        assertEquals(3, report.purged());
+        assertEquals(31, report.purgedBytes());
+        try (Stream<Path> quarantined = Files.walk(quarantine)) {
+            assertEquals(0, quarantined.filter(Files::isRegularFile).count());
+        }
+        assertEquals(3.0, meterRegistry.get("upload.gc.files").tag("action", "purged").counter().count());
+        assertEquals(31.0, meterRegistry.get("upload.gc.bytes").tag("action", "quarantined").counter().count());
+    }
+
+    private static Path thumbnail(String fileName) {
+        return UploadLayout.shardedPath(uploadDir.resolve(ThumbnailService.THUMBNAIL_DIR), fileName + ".jpg");
+    }
+
+    private static Path oldFile(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.writeString(path, content);
+        age(path, Duration.ofHours(2));
+        return path;
+    }
+
+    private static void age(Path path, Duration age) {
+        try {
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now().minus(age)));
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private void expenseReferring(String... attachments) {
+        User manager = userRepository.save(new User("manager", "pass", "ROLE_MANAGER"));
+        Category substrate = new Category();
+        substrate.setName("Substrate");
+        substrate = categoryRepository.save(substrate);
+        SubCategory straw = new SubCategory();
+        straw.setName("Straw");
+        straw.setCategory(substrate);
+        straw = subCategoryRepository.save(straw);
+
+        Expense expense = new Expense();
+        expense.setDescription("expense");
+        expense.setAmount(10000);
+        expense.setDate(LocalDate.of(2024, 1, 5));
+        expense.setPaymentMode(PaymentMode.UPI);
+        expense.setStatus(ExpenseStatus.DRAFT);
+        expense.setUser(manager);
+        expense.setCategory(substrate);
+        expense.setSubCategory(straw);
+        // The legacy name is kept as a receipt image, the others as attachments
+        expense.setReceiptImage(attachments[attachments.length - 1]);
+        for (int i = 0; i < attachments.length - 1; i++) {
+            expense.getAttachments().add(new ExpenseAttachment(attachments[i], expense));
+        }
+        expenseRepository.save(expense);
+    }
+}
@@ -0,0 +1,118 @@
+package com.mushroom.expense.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReceiptImageNormalizerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReceiptImageNormalizer normalizer;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        normalizer = new ReceiptImageNormalizer(true, 200, 0.8f, 2, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        normalizer.shutdown();
+    }
+
+    @Test
+    void normalizeAll_ShrinksPhotosUprightAndCountsTheBytesSaved() throws IOException {
+        // A landscape sensor image the phone says to turn a quarter clockwise
+        Path sideways = Files.write(tempDir.resolve("a.part"), withOrientation(photo(1600, 800), 6));
+        Path plain = Files.write(tempDir.resolve("b.part"), photo(1000, 1000));
+        long originalBytes = Files.size(sideways) + Files.size(plain);
+
+        List<ReceiptImageNormalizer.Upload> normalized = normalizer.normalizeAll(List.of(
+                new ReceiptImageNormalizer.Upload(sideways, ".jpeg"),
+                new ReceiptImageNormalizer.Upload(plain, ".jpg")));
+
+        BufferedImage upright = ImageIO.read(normalized.get(0).file().toFile());
+        assertEquals(100, upright.getWidth());
+        assertEquals(200, upright.getHeight());
+        assertEquals(".jpg", normalized.get(0).extension());
+        assertEquals(200, ImageIO.read(normalized.get(1).file().toFile()).getWidth());
+        assertFalse(Files.exists(sideways));
+        assertFalse(Files.exists(plain));
+        assertEquals(-1, indexOfExif(Files.readAllBytes(normalized.get(0).file())));
+
+        var saved = meterRegistry.get("receipts.normalization.bytes.saved").summary();
+        assertEquals(2, saved.count());
+        assertEquals(originalBytes - Files.size(normalized.get(0).file()) - Files.size(normalized.get(1).file()),
+                (long) saved.totalAmount());
+    }
+
+    @Test
+    void normalizeAll_LeavesOtherFilesAsUploaded() throws IOException {
+        Path pdf = Files.writeString(tempDir.resolve("c.part"), "%PDF-1.4");
+        Path broken = Files.writeString(tempDir.resolve("d.part"), "not really a jpeg");
+        ReceiptImageNormalizer.Upload pdfUpload = new ReceiptImageNormalizer.Upload(pdf, ".pdf");
+        ReceiptImageNormalizer.Upload brokenUpload = new ReceiptImageNormalizer.Upload(broken, ".jpg");
+
+        assertEquals(List.of(pdfUpload, brokenUpload), normalizer.normalizeAll(List.of(pdfUpload, brokenUpload)));
+        assertTrue(Files.exists(pdf));
+        assertTrue(Files.exists(broken));
+        assertTrue(meterRegistry.get("receipts.normalization.bytes.saved").summary().count() == 0);
+    }
+
+    private static byte[] photo(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        Graphics2D graphics = image.createGraphics();
+        for (int i = 0; i < 400; i++) {
+            graphics.setColor(new Color(random.nextInt(0xFFFFFF)));
+            graphics.fillRect(random.nextInt(width), random.nextInt(height), 40, 40);
+        }
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /** Inserts an EXIF segment holding only an orientation right after the JPEG's start marker. */
+    private static byte[] withOrientation(byte[] jpeg, int orientation) {
+        byte[] exif = {
+                (byte) 0xFF, (byte) 0xE1, 0, 34,
+                'E', 'x', 'i', 'f', 0, 0,
+                'M', 'M', 0, 42, 0, 0, 0, 8,
+                0, 1,
+                0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, (byte) orientation, 0, 0,
+                0, 0, 0, 0 };
+        byte[] result = new byte[jpeg.length + exif.length];
+        System.arraycopy(jpeg, 0, result, 0, 2);
+        System.arraycopy(exif, 0, result, 2, exif.length);
+        System.arraycopy(jpeg, 2, result, 2 + exif.length, jpeg.length - 2);
+        return result;
+    }
+
+    private static int indexOfExif(byte[] bytes) {
+        for (int i = 0; i + 4 <= bytes.length; i++) {
+            if (bytes[i] == 'E' && bytes[i + 1] == 'x' && bytes[i + 2] == 'i' && bytes[i + 3] == 'f') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,80 @@
+package com.mushroom.expense.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThumbnailServiceTest {
+
+    private ThumbnailService thumbnailService;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() {
+        FileStorageService fileStorageService = new FileStorageService(tempDir.toString(),
+                new ReceiptImageNormalizer(false, 100, 0.8f, 1, new SimpleMeterRegistry()));
+        thumbnailService = new ThumbnailService(fileStorageService, tempDir.toString(), 100, 0.8f, 1, 10);
+    }
+
+    @AfterEach
+    void tearDown() {
+        thumbnailService.shutdown();
+    }
+
+    @Test
+    void thumbnail_ScalesLargeImagesDownToAJpeg() throws IOException {
+        ImageIO.write(new BufferedImage(1200, 600, BufferedImage.TYPE_INT_ARGB), "png",
+                tempDir.resolve("receipt.png").toFile());
+
+        Path thumbnail = thumbnailService.thumbnail("receipt.png").orElseThrow();
+
+        assertEquals(tempDir.resolve(ThumbnailService.THUMBNAIL_DIR).resolve("re/ce/receipt.png.jpg"), thumbnail);
+        BufferedImage preview = ImageIO.read(thumbnail.toFile());
+        assertEquals(100, preview.getWidth());
+        assertEquals(50, preview.getHeight());
+        // Served from disk the second time
+        assertEquals(thumbnail, thumbnailService.thumbnail("receipt.png").orElseThrow());
+    }
+
+    @Test
+    void thumbnail_NoPreviewForPdfsOrUnreadableFiles() throws IOException {
+        Files.writeString(tempDir.resolve("invoice.pdf"), "%PDF-1.4");
+        Files.writeString(tempDir.resolve("notes.jpg"), "not an image");
+
+        assertTrue(thumbnailService.thumbnail("invoice.pdf").isEmpty());
+        assertTrue(thumbnailService.thumbnail("notes.jpg").isEmpty());
+        assertThrows(NoSuchFileException.class, () -> thumbnailService.thumbnail("missing.jpg"));
+        assertThrows(IllegalArgumentException.class, () -> thumbnailService.thumbnail("../receipt.jpg"));
+    }
+
+    @Test
+    void generateLater_WritesThePreviewInTheBackground() throws Exception {
+        ImageIO.write(new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB), "jpg",
+                tempDir.resolve("photo.jpg").toFile());
+        Path expected = tempDir.resolve(ThumbnailService.THUMBNAIL_DIR).resolve("ph/ot/photo.jpg.jpg");
+
+        thumbnailService.generateLater(List.of("photo.jpg"));
+
+        for (int i = 0; i < 100 && !Files.exists(expected); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(Files.exists(expected));
+
+        thumbnailService.delete("photo.jpg");
+        assertFalse(Files.exists(expected));
+    }
+}
@@ -0,0 +1,53 @@
+package com.mushroom.expense.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UploadShardMigratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void migrateAll_MovesFlatFilesInBatchesWhileTheyStayReachable() throws Exception {
+        FileStorageService fileStorageService = new FileStorageService(tempDir.toString(),
+                new ReceiptImageNormalizer(false, 100, 0.8f, 1, new SimpleMeterRegistry()));
+        Path thumbnails = Files.createDirectories(tempDir.resolve(ThumbnailService.THUMBNAIL_DIR));
+        Files.writeString(tempDir.resolve("aaaa1.jpg"), "one");
+        Files.writeString(tempDir.resolve("bbbb2.jpg"), "two");
+        Files.writeString(tempDir.resolve("cccc3.pdf"), "three");
+        Files.writeString(thumbnails.resolve("aaaa1.jpg.jpg"), "preview");
+        Files.createDirectories(tempDir.resolve("exports"));
+        UploadShardMigrator migrator = new UploadShardMigrator(tempDir.toString(), false, 2, Duration.ZERO);
+
+        assertEquals(2, migrator.migrateBatch());
+        // Moved or not, every file is found under its name
+        assertEquals("one", Files.readString(fileStorageService.locate("aaaa1.jpg")));
+        assertEquals("three", Files.readString(fileStorageService.locate("cccc3.pdf")));
+
+        assertEquals(2, migrator.migrateAll());
+        assertEquals(tempDir.resolve("bb/bb/bbbb2.jpg"), fileStorageService.locate("bbbb2.jpg"));
+        assertTrue(Files.exists(thumbnails.resolve("aa/aa/aaaa1.jpg.jpg")));
+        assertTrue(Files.isDirectory(tempDir.resolve("exports")));
+        try (var flat = Files.list(tempDir)) {
+            assertEquals(0, flat.filter(Files::isRegularFile).count());
+        }
+
+        fileStorageService.deleteFile("cccc3.pdf");
+        assertFalse(Files.exists(tempDir.resolve("cc/cc/cccc3.pdf")));
+    }
+
+    @Test
+    void layoutRejectsAnythingButAPlainFileName() {
+        assertThrows(IllegalArgumentException.class, () -> UploadLayout.shardedPath(tempDir, "../secret"));
+        assertThrows(IllegalArgumentException.class, () -> UploadLayout.shardedPath(tempDir, ".incoming"));
+        assertEquals(tempDir.resolve("a_b.png"), UploadLayout.shardedPath(tempDir, "a_b.png"));
+    }
+}
@@ -59,6 +59,15 @@ class ExpenseSpecificationTest {
         Path subCatNamePath = mock(Path.class);
         when(root.get("subCategory")).thenReturn(subCatPath);
         when(subCatPath.get("name")).thenReturn(subCatNamePath);
+        Path subCatIdPath = mock(Path.class);
+        when(subCatPath.get("id")).thenReturn(subCatIdPath);
+
+        // Category and subcategory names are matched through subqueries
+        Subquery subquery = mock(Subquery.class);
+        Root nameRoot = mock(Root.class);
+        when(query.subquery(Long.class)).thenReturn(subquery);
+        when(subquery.from(any(Class.class))).thenReturn(nameRoot);
+        when(subquery.select(any())).thenReturn(subquery);
 
         // Execute
         spec.toPredicate(root, query, cb);